@@ -0,0 +1,99 @@
+package br.iff.edu.ararajuba.bench;
+
+import br.iff.edu.ararajuba.core.Dispatcher;
+import br.iff.edu.ararajuba.core.Partitioner;
+import br.iff.edu.ararajuba.dto.AckDTO;
+import br.iff.edu.ararajuba.log.CommitLog;
+import br.iff.edu.ararajuba.service.BrokerService;
+import br.iff.edu.ararajuba.state.ConsumerStateStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Uma chamada de ack com `batch` deliveryIds. Em ordem, o committed avança a cada id;
+// embaralhado, os ids passam pelo bitmap do AckTracker até a janela fechar.
+// As listas são montadas antes; quando acabam, o benchmark segue com outro grupo.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BrokerServiceAckBenchmark {
+
+    private static final String TOPIC = "bench-ack";
+
+    @Param({"100"})
+    int batch;
+
+    @Param({"false", "true"})
+    boolean shuffled;
+
+    @Param({"200000"})
+    int records;
+
+    private Path dir;
+    private CommitLog log;
+    private ConsumerStateStore state;
+    private BrokerService broker;
+    private List<AckDTO> acks;
+    private int next;
+    private int generation;
+    private String group;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        dir = Fixtures.dataDir();
+        System.setProperty("ararajuba.log.flush.mode", "none");
+        System.setProperty("ararajuba.topic.partitions", "1");
+        log = Fixtures.start(new CommitLog());
+        log.whenReady().join();
+        state = Fixtures.start(new ConsumerStateStore());
+        Partitioner partitioner = Fixtures.inject(new Partitioner(), "log", log);
+        broker = new BrokerService();
+        Fixtures.inject(broker, "log", log);
+        Fixtures.inject(broker, "state", state);
+        Fixtures.inject(broker, "dispatcher", new Dispatcher());
+        Fixtures.inject(broker, "partitioner", partitioner);
+
+        byte[] value = new byte[16];
+        List<byte[]> keys = new ArrayList<>();
+        List<byte[]> values = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            keys.add(null);
+            values.add(value);
+        }
+        for (int i = 0; i < records; i += 1000) log.appendBatch(TOPIC, keys, values);
+
+        Random rnd = new Random(42);
+        acks = new ArrayList<>(records / batch);
+        for (int from = 0; from + batch <= records; from += batch) {
+            List<String> ids = new ArrayList<>(batch);
+            for (int i = 0; i < batch; i++) ids.add("0:" + (from + i));
+            if (shuffled) Collections.shuffle(ids, rnd);
+            acks.add(new AckDTO(ids));
+        }
+        group = "g0";
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Fixtures.stop(state);
+        Fixtures.stop(log);
+        Fixtures.delete(dir);
+    }
+
+    @Benchmark
+    public void ack() throws Exception {
+        if (next == acks.size()) {
+            next = 0;
+            group = "g" + (++generation);
+        }
+        broker.ack(TOPIC, group, null, acks.get(next++));
+    }
+}
@@ -0,0 +1,67 @@
+package br.iff.edu.ararajuba.bench;
+
+import br.iff.edu.ararajuba.log.CommitLog;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Contenção de escrita: THREADS publicadores espalhados por `topics` tópicos. Com um dono de escrita
+// por tópico, a vazão total deve crescer com o número de tópicos; com 1 tópico mede o group commit.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(CommitLogAppendBenchmark.THREADS)
+public class CommitLogAppendBenchmark {
+
+    static final int THREADS = 16;
+
+    @Param({"1", "2", "4", "8", "16"})
+    int topics;
+
+    // none mede só a escrita; batch inclui o fsync agrupado por lote
+    @Param({"none", "batch"})
+    String flushMode;
+
+    @Param({"256"})
+    int valueBytes;
+
+    private Path dir;
+    CommitLog log;
+    byte[] value;
+    private final AtomicInteger threads = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        dir = Fixtures.dataDir();
+        System.setProperty("ararajuba.log.flush.mode", flushMode);
+        log = Fixtures.start(new CommitLog());
+        log.whenReady().join();
+        value = new byte[valueBytes];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Fixtures.stop(log);
+        Fixtures.delete(dir);
+    }
+
+    @State(Scope.Thread)
+    public static class Publisher {
+        String topic;
+
+        @Setup(Level.Trial)
+        public void setup(CommitLogAppendBenchmark b) {
+            topic = "bench-" + (b.threads.getAndIncrement() % b.topics);
+        }
+    }
+
+    @Benchmark
+    public long append(Publisher p) throws Exception {
+        return log.append(p.topic, null, value);
+    }
+}
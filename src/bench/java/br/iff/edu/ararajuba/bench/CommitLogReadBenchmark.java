@@ -0,0 +1,96 @@
+package br.iff.edu.ararajuba.bench;
+
+import br.iff.edu.ararajuba.log.CommitLog;
+import br.iff.edu.ararajuba.log.MessageRecord;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Leitura pelo segmento (cache da cauda desligado por padrão): lote sequencial avançando pelo log
+// e registro único em offset aleatório, que paga o lookup no índice a cada chamada
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommitLogReadBenchmark {
+
+    private static final String TOPIC = "bench-read";
+
+    @Param({"200000"})
+    int records;
+
+    @Param({"256"})
+    int valueBytes;
+
+    @Param({"100"})
+    int batch;
+
+    @Param({"0"})
+    String tailCacheBytes;
+
+    @Param({"none"})
+    String compression;
+
+    private Path dir;
+    private CommitLog log;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        dir = Fixtures.dataDir();
+        System.setProperty("ararajuba.log.flush.mode", "none");
+        System.setProperty("ararajuba.log.tail-cache.bytes", tailCacheBytes);
+        System.setProperty("ararajuba.log.compression", compression);
+        log = Fixtures.start(new CommitLog());
+        log.whenReady().join();
+
+        byte[] value = new byte[valueBytes];
+        List<byte[]> keys = new ArrayList<>();
+        List<byte[]> values = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            keys.add(null);
+            values.add(value);
+        }
+        for (int i = 0; i < records; i += 1000) log.appendBatch(TOPIC, keys, values);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Fixtures.stop(log);
+        Fixtures.delete(dir);
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        long next;
+        final SplittableRandom rnd = new SplittableRandom(7);
+    }
+
+    @Benchmark
+    public List<MessageRecord> sequential(Cursor c) throws Exception {
+        List<MessageRecord> out = log.readRange(TOPIC, c.next, batch, Integer.MAX_VALUE);
+        c.next += out.size();
+        if (c.next >= records) c.next = 0;
+        return out;
+    }
+
+    // Mesma leitura sequencial sem materializar MessageRecord: só soma o tamanho de cada value
+    @Benchmark
+    public long sequentialView(Cursor c) throws Exception {
+        long[] bytes = {0};
+        int n = log.readRange(TOPIC, c.next, batch, Integer.MAX_VALUE, r -> bytes[0] += r.valueLength());
+        c.next += n;
+        if (c.next >= records) c.next = 0;
+        return bytes[0];
+    }
+
+    @Benchmark
+    public List<MessageRecord> random(Cursor c) throws Exception {
+        return log.readRange(TOPIC, c.rnd.nextLong(records), 1, Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,51 @@
+package br.iff.edu.ararajuba.bench;
+
+import br.iff.edu.ararajuba.state.ConsumerStateStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// commit só atualiza a memória e marca o grupo; o journal é gravado pelo flusher em segundo plano
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ConsumerStateStoreBenchmark {
+
+    private Path dir;
+    ConsumerStateStore state;
+    private final AtomicInteger groups = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        dir = Fixtures.dataDir();
+        state = Fixtures.start(new ConsumerStateStore());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Fixtures.stop(state);
+        Fixtures.delete(dir);
+    }
+
+    @State(Scope.Thread)
+    public static class Consumer {
+        String group;
+        long offset;
+
+        @Setup(Level.Trial)
+        public void setup(ConsumerStateStoreBenchmark b) {
+            group = "g" + b.groups.getAndIncrement();
+        }
+    }
+
+    @Benchmark
+    public void commit(Consumer c) {
+        state.commit("bench-offsets", c.group, c.offset++);
+    }
+}
@@ -0,0 +1,86 @@
+package br.iff.edu.ararajuba.bench;
+
+import br.iff.edu.ararajuba.core.Dispatcher;
+import br.iff.edu.ararajuba.core.Partitioner;
+import br.iff.edu.ararajuba.dto.MessageDTO;
+import br.iff.edu.ararajuba.log.CommitLog;
+import br.iff.edu.ararajuba.service.BrokerService;
+import br.iff.edu.ararajuba.state.ConsumerStateStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Uma onda de `inFlight` publicações simultâneas pelo mesmo caminho das rotas REST (BrokerService.offload),
+// cada uma bloqueada até o fsync do lote (flush.mode=batch). No modo worker, `workers` threads de plataforma
+// fazem o papel do pool do Quarkus (quarkus.thread-pool.max-threads) e limitam quantas esperam juntas o mesmo fsync;
+// no modo virtual, todas entram na fila do tópico ao mesmo tempo e o group commit as grava em poucos lotes.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutionModeBenchmark {
+
+    private static final String TOPIC = "bench-exec";
+
+    @Param({"worker", "virtual"})
+    String mode;
+
+    @Param({"1000", "10000", "50000"})
+    int inFlight;
+
+    @Param({"200"})
+    int workers;
+
+    private Path dir;
+    private CommitLog log;
+    private ConsumerStateStore state;
+    private BrokerService broker;
+    private ExecutorService pool;
+    private final MessageDTO message = new MessageDTO(null, "x".repeat(100));
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        dir = Fixtures.dataDir();
+        System.setProperty("ararajuba.log.flush.mode", "batch");
+        System.setProperty("ararajuba.topic.partitions", "1");
+        System.setProperty("ararajuba.execution.mode", mode);
+        log = Fixtures.start(new CommitLog());
+        log.whenReady().join();
+        state = Fixtures.start(new ConsumerStateStore());
+        Partitioner partitioner = Fixtures.inject(new Partitioner(), "log", log);
+        broker = new BrokerService();
+        Fixtures.inject(broker, "log", log);
+        Fixtures.inject(broker, "state", state);
+        Fixtures.inject(broker, "dispatcher", new Dispatcher());
+        Fixtures.inject(broker, "partitioner", partitioner);
+        if (mode.equals("worker")) {
+            pool = Executors.newFixedThreadPool(workers);
+            Fixtures.inject(broker, "blocking", pool);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (pool != null) pool.shutdownNow();
+        Fixtures.stop(state);
+        Fixtures.stop(log);
+        Fixtures.delete(dir);
+    }
+
+    // Tempo para a onda inteira ser confirmada; requisições por segundo = inFlight / tempo
+    @Benchmark
+    public void wave() {
+        CompletableFuture<?>[] all = new CompletableFuture<?>[inFlight];
+        for (int i = 0; i < inFlight; i++) {
+            all[i] = broker.offload(() -> CompletableFuture.completedFuture(broker.publish(TOPIC, message)))
+                    .toCompletableFuture();
+        }
+        CompletableFuture.allOf(all).join();
+    }
+}
@@ -0,0 +1,62 @@
+package br.iff.edu.ararajuba.bench;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+
+// Monta os beans fora do Quarkus: injeta os campos @Inject e chama @PostConstruct/@PreDestroy como o ArC faria
+final class Fixtures {
+
+    private Fixtures(){}
+
+    static Path dataDir() throws IOException {
+        Path dir = Files.createTempDirectory("ararajuba-bench");
+        System.setProperty("ararajuba.data.dir", dir.toString());
+        return dir;
+    }
+
+    static void delete(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) return;
+        try (var s = Files.walk(dir)) {
+            for (Path p : s.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+
+    static <T> T inject(T bean, String field, Object value) {
+        try {
+            Field f = bean.getClass().getDeclaredField(field);
+            f.setAccessible(true);
+            f.set(bean, value);
+            return bean;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Campo " + field + " não encontrado em " + bean.getClass().getSimpleName(), e);
+        }
+    }
+
+    static <T> T start(T bean) {
+        invoke(bean, PostConstruct.class);
+        return bean;
+    }
+
+    static void stop(Object bean) {
+        if (bean != null) invoke(bean, PreDestroy.class);
+    }
+
+    private static void invoke(Object bean, Class<? extends java.lang.annotation.Annotation> lifecycle) {
+        for (Method m : bean.getClass().getDeclaredMethods()) {
+            if (!m.isAnnotationPresent(lifecycle)) continue;
+            try {
+                m.setAccessible(true);
+                m.invoke(bean);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Falha em " + bean.getClass().getSimpleName() + "." + m.getName(), e);
+            }
+        }
+    }
+}
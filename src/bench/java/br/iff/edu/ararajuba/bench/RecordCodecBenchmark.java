@@ -0,0 +1,61 @@
+package br.iff.edu.ararajuba.bench;
+
+import br.iff.edu.ararajuba.log.MessageRecord;
+import br.iff.edu.ararajuba.log.RecordCodec;
+import br.iff.edu.ararajuba.log.RecordView;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordCodecBenchmark {
+
+    @Param({"64", "1024", "16384"})
+    int valueBytes;
+
+    private byte[] key;
+    private byte[] value;
+    private ByteBuffer encoded;
+    private ByteBuffer target;
+    private final RecordView view = new RecordView();
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(42);
+        key = "pedido-12345".getBytes();
+        value = new byte[valueBytes];
+        rnd.nextBytes(value);
+        encoded = RecordCodec.encode(0, key, value);
+        target = ByteBuffer.allocateDirect(RecordCodec.encodedSize(key, value));
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        return RecordCodec.encode(0, key, value);
+    }
+
+    // Caminho do CommitLog: grava no buffer do chamador, sem alocar
+    @Benchmark
+    public int encodeInto() {
+        target.clear();
+        return RecordCodec.encode(target, 0, key, value);
+    }
+
+    @Benchmark
+    public MessageRecord decode() {
+        return RecordCodec.decode(0, encoded.duplicate());
+    }
+
+    // Caminho das leituras: a view aponta para o buffer, sem copiar key e value
+    @Benchmark
+    public int decodeView() {
+        return RecordCodec.decode(0, encoded, 0, view).valueLength();
+    }
+}
@@ -0,0 +1,30 @@
+package br.iff.edu.ararajuba.api;
+
+import br.iff.edu.ararajuba.service.BrokerService;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+@Path("/admin/topics")
+@Produces(MediaType.APPLICATION_JSON)
+public class AdminResource {
+
+    @Inject
+    BrokerService brokerService;
+
+    // Offsets, tamanho, taxa de append e lag por grupo de cada partição, sem tocar o disco
+    @GET
+    public Response topics() {
+        return Response.ok(brokerService.topicStats()).build();
+    }
+
+    @GET
+    @Path("/{topic}")
+    public Response topic(@PathParam("topic") String topic) {
+        return Response.ok(brokerService.topicStats(topic)).build();
+    }
+}
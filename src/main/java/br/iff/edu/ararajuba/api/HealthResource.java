@@ -0,0 +1,31 @@
+package br.iff.edu.ararajuba.api;
+
+import br.iff.edu.ararajuba.log.CommitLog;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Path("/health")
+@Produces(MediaType.APPLICATION_JSON)
+public class HealthResource {
+
+    @Inject
+    CommitLog log;
+
+    // O processo já atende durante a recuperação; pronto só quando todos os tópicos do disco carregaram
+    @GET
+    @Path("/ready")
+    public Response ready() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        boolean ready = log.isReady();
+        body.put("status", ready ? "UP" : "DOWN");
+        body.put("loading", log.loadingTopics());
+        return Response.status(ready ? Response.Status.OK : Response.Status.SERVICE_UNAVAILABLE).entity(body).build();
+    }
+}
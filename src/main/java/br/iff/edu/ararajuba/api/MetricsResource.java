@@ -0,0 +1,17 @@
+package br.iff.edu.ararajuba.api;
+
+import br.iff.edu.ararajuba.metrics.Metrics;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+
+@Path("/metrics")
+public class MetricsResource {
+
+    // Formato de exposição texto do Prometheus
+    @GET
+    @Produces("text/plain; version=0.0.4; charset=utf-8")
+    public String scrape() {
+        return Metrics.scrape();
+    }
+}
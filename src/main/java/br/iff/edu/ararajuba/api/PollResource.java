@@ -1,7 +1,6 @@
 package br.iff.edu.ararajuba.api;
 
 import br.iff.edu.ararajuba.dto.AckDTO;
-import br.iff.edu.ararajuba.dto.MessageView;
 import br.iff.edu.ararajuba.service.BrokerService;
 import br.iff.edu.ararajuba.util.TopicNames;
 import jakarta.inject.Inject;
@@ -9,7 +8,8 @@ import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 
-import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 @Path("/topics/{topic}")
 @Produces(MediaType.APPLICATION_JSON)
@@ -18,29 +18,37 @@ public class PollResource {
     @Inject
     BrokerService brokerService;
 
+    // A primeira leitura roda no executor de ararajuba.execution.mode; se não houver dados, a requisição
+    // fica estacionada sem thread até o próximo append no tópico ou o timeout
     @GET
     @Path("/poll")
-    public Response poll(@PathParam("topic") String topic,
-                         @QueryParam("routeGroup") String routeGroup,
-                         @QueryParam("consumerGroup") String consumerGroup,
-                         @QueryParam("max") @DefaultValue("50") int max,
-                         @QueryParam("timeoutMs") @DefaultValue("10000") long timeoutMs) throws Exception {
+    public CompletionStage<Response> poll(@PathParam("topic") String topic,
+                                          @QueryParam("routeGroup") String routeGroup,
+                                          @QueryParam("consumerGroup") String consumerGroup,
+                                          @QueryParam("partition") Integer partition,
+                                          @QueryParam("max") @DefaultValue("50") int max,
+                                          @QueryParam("timeoutMs") @DefaultValue("10000") long timeoutMs,
+                                          @QueryParam("fromOffset") Long fromOffset,
+                                          @QueryParam("fromTs") Long fromTs) {
 
         String physical = TopicNames.physicalTopic(topic, routeGroup);
-        List<MessageView> out = brokerService.poll(physical, consumerGroup, max, timeoutMs);
-        return Response.ok(out).build();
+        return brokerService.offload(() -> brokerService.poll(physical, consumerGroup, partition, max, timeoutMs, fromOffset, fromTs)
+                .thenApply(out -> Response.ok(out).build()));
     }
 
     @POST
     @Path("/ack")
     @Consumes(MediaType.APPLICATION_JSON)
-    public Response ack(@PathParam("topic") String topic,
-                        @QueryParam("routeGroup") String routeGroup,
-                        @QueryParam("consumerGroup") String consumerGroup,
-                        AckDTO ackDTO){
+    public CompletionStage<Response> ack(@PathParam("topic") String topic,
+                                         @QueryParam("routeGroup") String routeGroup,
+                                         @QueryParam("consumerGroup") String consumerGroup,
+                                         @QueryParam("partition") Integer partition,
+                                         AckDTO ackDTO) {
         String physical = TopicNames.physicalTopic(topic, routeGroup);
-        brokerService.ack(physical, consumerGroup, ackDTO);
-        return Response.noContent().build();
+        return brokerService.offload(() -> {
+            brokerService.ack(physical, consumerGroup, partition, ackDTO);
+            return CompletableFuture.completedFuture(Response.noContent().build());
+        });
     }
 
     @GET
@@ -1,31 +1,106 @@
 package br.iff.edu.ararajuba.api;
 
 import br.iff.edu.ararajuba.dto.MessageDTO;
+import br.iff.edu.ararajuba.dto.PublishAck;
 import br.iff.edu.ararajuba.service.BrokerService;
 import br.iff.edu.ararajuba.util.TopicNames;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 @Path("/topics/{topic}/publish")
 @Consumes(MediaType.APPLICATION_JSON)
 @Produces(MediaType.APPLICATION_JSON)
 public class PublishResource {
 
+    static final String APPLICATION_NDJSON = "application/x-ndjson";
+
     @Inject
     BrokerService brokerService;
 
+    private final ObjectMapper om = new ObjectMapper();
+
+    // As rotas devolvem CompletionStage para não ocupar o event loop: a escrita, que espera o fsync,
+    // roda no executor de ararajuba.execution.mode (workers ou virtual threads)
+    @POST
+    public CompletionStage<Response> publish(@PathParam("topic") String topic,
+                                             @QueryParam("group") String routeGroup,
+                                             MessageDTO messageDTO) {
+
+        String physical = TopicNames.physicalTopic(topic, routeGroup);
+        return brokerService.offload(() -> {
+            PublishAck ack = brokerService.publish(physical, messageDTO);
+            return CompletableFuture.completedFuture(Response.accepted().entity(Map.of(
+                    "offset", ack.firstOffset(),
+                    "partition", ack.partition(),
+                    "topic", physical)).build());
+        });
+    }
+
     @POST
-    public Response publish(@PathParam("topic") String topic,
-                            @QueryParam("group") String routeGroup,
-                            MessageDTO messageDTO) throws Exception {
+    @Path("/batch")
+    public CompletionStage<Response> publishBatch(@PathParam("topic") String topic,
+                                                  @QueryParam("group") String routeGroup,
+                                                  List<MessageDTO> messages) {
 
         String physical = TopicNames.physicalTopic(topic, routeGroup);
-        long off = brokerService.publish(physical, messageDTO);
-        return Response.accepted().entity(Map.of("offset", off, "topic", physical)).build();
+        return brokerService.offload(() -> CompletableFuture.completedFuture(
+                batchAccepted(physical, brokerService.publishBatch(physical, messages), messages.size())));
+    }
+
+    @POST
+    @Path("/batch")
+    @Consumes(APPLICATION_NDJSON)
+    public CompletionStage<Response> publishBatchNdjson(@PathParam("topic") String topic,
+                                                       @QueryParam("group") String routeGroup,
+                                                       String body) {
+
+        List<MessageDTO> messages = new ArrayList<>();
+        if (body != null) {
+            for (String line : body.split("\n")) {
+                if (line.isBlank()) continue;
+                try {
+                    messages.add(om.readValue(line, MessageDTO.class));
+                } catch (IOException e) {
+                    throw new BadRequestException("Linha NDJSON inválida (mensagem " + messages.size() + ").");
+                }
+            }
+        }
+
+        String physical = TopicNames.physicalTopic(topic, routeGroup);
+        return brokerService.offload(() -> CompletableFuture.completedFuture(
+                batchAccepted(physical, brokerService.publishBatch(physical, messages), messages.size())));
+    }
+
+    // Com uma única partição envolvida a resposta mantém firstOffset/lastOffset no topo
+    private Response batchAccepted(String physical, List<PublishAck> acks, int count) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("topic", physical);
+        if (acks.size() == 1) {
+            body.put("firstOffset", acks.get(0).firstOffset());
+            body.put("lastOffset", acks.get(0).lastOffset());
+        }
+        body.put("count", count);
+        List<Map<String, Object>> partitions = new ArrayList<>(acks.size());
+        for (PublishAck a : acks) {
+            partitions.add(Map.of(
+                    "partition", a.partition(),
+                    "firstOffset", a.firstOffset(),
+                    "lastOffset", a.lastOffset(),
+                    "count", a.count()));
+        }
+        body.put("partitions", partitions);
+        return Response.accepted().entity(body).build();
     }
 }
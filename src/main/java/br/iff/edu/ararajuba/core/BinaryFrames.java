@@ -0,0 +1,77 @@
+package br.iff.edu.ararajuba.core;
+
+import br.iff.edu.ararajuba.log.RecordView;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Subprotocolo binário do /ws/subscribe, tudo big-endian e próximo do formato do RecordCodec.
+// Lote (servidor -> cliente): tipo=1 (1 byte), epoch (8), partição (4), quantidade (4) e, por registro,
+//   offset (8), ts (8), klen (4), vlen (4), key, value.
+// Ack cumulativo (cliente -> servidor): tipo=2 (1 byte), epoch (8), offset (8): confirma tudo até offset
+// na partição do lote que trouxe aquele epoch.
+public final class BinaryFrames {
+
+    public static final String SUBPROTOCOL = "ararajuba.binary.v1";
+
+    static final byte BATCH = 1;
+    static final byte ACK_UP_TO = 2;
+
+    private static final int BATCH_HEADER = 1 + Long.BYTES + Integer.BYTES + Integer.BYTES;
+    private static final int RECORD_HEADER = Long.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES;
+    private static final int ACK_SIZE = 1 + Long.BYTES + Long.BYTES;
+
+    private BinaryFrames(){}
+
+    // Lote montado direto das RecordViews de uma leitura, num buffer da sessão reaproveitado entre rodadas.
+    // Não é thread-safe: quem usa segura o lock do ctx.
+    static final class BatchWriter {
+
+        private ByteBuffer buf = ByteBuffer.allocate(4096);
+        private int count;
+
+        void begin(long epoch, int partition){
+            buf.clear();
+            buf.put(BATCH);
+            buf.putLong(epoch);
+            buf.putInt(partition);
+            buf.putInt(0);
+            count = 0;
+        }
+
+        void add(RecordView r){
+            int size = RECORD_HEADER + r.keyLength() + r.valueLength();
+            if (buf.remaining() < size) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(buf.capacity() << 1, buf.position() + size));
+                buf = bigger.put(buf.flip());
+            }
+            buf.putLong(r.offset());
+            buf.putLong(r.ts());
+            buf.putInt(r.keyLength());
+            buf.putInt(r.valueLength());
+            r.copyKeyTo(buf);
+            r.copyValueTo(buf);
+            count++;
+        }
+
+        // Cópia exata do lote: o envio é assíncrono e o buffer volta a ser usado na rodada seguinte
+        ByteBuffer frame(){
+            buf.putInt(BATCH_HEADER - Integer.BYTES, count);
+            ByteBuffer out = ByteBuffer.allocate(buf.position());
+            out.put(0, buf, 0, buf.position());
+            return out;
+        }
+    }
+
+    // -1 se não é um ack cumulativo bem formado
+    static long ackEpoch(ByteBuffer msg){
+        if (msg.remaining() != ACK_SIZE || msg.get(msg.position()) != ACK_UP_TO) return -1;
+        return msg.duplicate().order(ByteOrder.BIG_ENDIAN).getLong(msg.position() + 1);
+    }
+
+    static long ackOffset(ByteBuffer msg){
+        if (msg.remaining() != ACK_SIZE) return -1;
+        long offset = msg.duplicate().order(ByteOrder.BIG_ENDIAN).getLong(msg.position() + 1 + Long.BYTES);
+        return offset < 0 ? -1 : offset;
+    }
+}
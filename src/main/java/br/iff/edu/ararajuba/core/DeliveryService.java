@@ -1,16 +1,23 @@
 package br.iff.edu.ararajuba.core;
 
 import br.iff.edu.ararajuba.log.CommitLog;
-import br.iff.edu.ararajuba.log.MessageRecord;
+import br.iff.edu.ararajuba.metrics.Metrics;
 import br.iff.edu.ararajuba.state.ConsumerStateStore;
+import br.iff.edu.ararajuba.util.ExecutionMode;
+import br.iff.edu.ararajuba.util.LongLongHashMap;
+import br.iff.edu.ararajuba.util.Settings;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.websocket.Session;
 
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 @ApplicationScoped
@@ -21,139 +28,453 @@ public class DeliveryService {
     @Inject
     ConsumerStateStore state;
     @Inject Dispatcher dispatcher;
+    @Inject Partitioner partitioner;
+
+    private static final int MAX_BATCH_BYTES = 1024 * 1024;
+    // Offsets das sessões que não informam grupo
+    public static final String ANONYMOUS_GROUP = "anon";
 
     private int MAX_IN_FLIGHT;
     private long ACK_TIMEOUT_MS;
+    private int FRAME_CACHE_ENTRIES;
 
     private final ObjectMapper om = new ObjectMapper();
 
+    private static final long TIMER_TICK_MS = 100;
+    private static final int TIMER_WHEEL_SIZE = 512;
+
+    private static final AtomicLong EPOCHS = new AtomicLong();
+
+    // Uma por partição consumida pela sessão; topic é o log físico da partição
     private static final class ClientCtx {
         final String topic;
+        final int partition;
         final String group;
         final Session session;
+        // Negociou o subprotocolo binário: lotes num único frame e ack cumulativo
+        final boolean binary;
+
+        // deliveryId = "<epoch>:<offset>"; o epoch identifica sessão e partição e descarta acks de outra conexão
+        final long epoch = EPOCHS.incrementAndGet();
+        volatile boolean closed;
+
+        volatile long nextOffset;
+        // Posição por tempo pedida na conexão; resolvida no índice de tempo na primeira rodada de entrega
+        long seekTs = -1;
+        // Maior offset já enviado à sessão; protegido pelo lock do ctx
+        long delivered = -1;
+
+        // ReentrantLock em vez de monitor: a rodada de entrega lê o log segurando o lock, e uma virtual
+        // thread bloqueada dentro de um monitor prende a carrier
+        final ReentrantLock lock = new ReentrantLock();
+
+        // Coalesce: várias notificações seguidas viram uma única rodada de deliverMore
+        final AtomicBoolean wakeScheduled = new AtomicBoolean();
+        Dispatcher.Listener listener;
+
+        // offset -> prazo do ack (ms); protegido pelo lock do ctx
+        final LongLongHashMap pending;
+        boolean timerArmed;
+        // Buffer do lote binário, reaproveitado entre rodadas; protegido pelo lock do ctx
+        final BinaryFrames.BatchWriter batch;
+
+        ClientCtx(String topic, int partition, String group, Session session, long nextOffset, int maxInFlight) {
+            this.topic = topic;
+            this.partition = partition;
+            this.group = group;
+            this.session = session;
+            this.binary = BinaryFrames.SUBPROTOCOL.equals(session.getNegotiatedSubprotocol());
+            this.nextOffset = nextOffset;
+            this.pending = new LongLongHashMap(maxInFlight);
+            this.batch = binary ? new BinaryFrames.BatchWriter() : null;
+        }
+    }
 
-        long nextOffset;
-
-        final Map<String, Long> pending = new ConcurrentHashMap<>();
+    // Sessão de um grupo; ctxs são as partições atribuídas a ela na última rodada de balanceamento
+    private static final class Member {
+        final String topic;
+        final String group;
+        final Session session;
+        // Grupo de balanceamento; numa sessão sem grupo é só dela
+        final GroupKey key;
+        volatile List<ClientCtx> ctxs = List.of();
 
-        final NavigableSet<Long> ackedNotCommitted = new ConcurrentSkipListSet<>();
+        // fromOffset/fromTs da conexão (-1 sem): valem só para as partições da primeira atribuição,
+        // para um rebalanceamento posterior não repetir o replay
+        final long fromOffset;
+        final long fromTs;
+        boolean assigned;
 
-        ClientCtx(String topic, String group, Session session, long nextOffset) {
+        Member(String topic, String group, Session session, GroupKey key, long fromOffset, long fromTs) {
             this.topic = topic;
             this.group = group;
             this.session = session;
-            this.nextOffset = nextOffset;
+            this.key = key;
+            this.fromOffset = fromOffset;
+            this.fromTs = fromTs;
         }
     }
 
-    private final Map<Session, ClientCtx> clients = new ConcurrentHashMap<>();
+    // Membros vivos de um tópico/grupo, na ordem de chegada; protegido por lock
+    private static final class Group {
+        final List<Member> members = new ArrayList<>();
+        boolean dead;
+        final ReentrantLock lock = new ReentrantLock();
+    }
+
+    private record GroupKey(String topic, String group) {}
+
+    private final Map<Session, Member> clients = new ConcurrentHashMap<>();
+    private final Map<GroupKey, Group> groups = new ConcurrentHashMap<>();
+    // Frames já serializados por partição, compartilhados entre as sessões que a assinam
+    private final Map<String, FrameCache> frameCaches = new ConcurrentHashMap<>();
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    // Rodadas de entrega: no modo worker, o próprio scheduler; no virtual, uma virtual thread por rodada
+    private Executor sender;
+    private final TimerWheel<ClientCtx> ackTimeouts =
+            new TimerWheel<>(TIMER_TICK_MS, TIMER_WHEEL_SIZE, System.currentTimeMillis());
 
     @PostConstruct
     void init() {
 
-        MAX_IN_FLIGHT = Integer.parseInt(System.getProperty("andorinha.delivery.max-in-flight",
-                System.getenv().getOrDefault("ANDORINHA_MAX_IN_FLIGHT", "100")));
-        ACK_TIMEOUT_MS = Long.parseLong(System.getProperty("andorinha.delivery.ack-timeout.ms",
-                System.getenv().getOrDefault("ANDORINHA_ACK_TIMEOUT_MS", "15000")));
+        // Os nomes antigos (andorinha.*), quando presentes, continuam valendo
+        String maxInFlight = System.getProperty("andorinha.delivery.max-in-flight", System.getenv("ANDORINHA_MAX_IN_FLIGHT"));
+        MAX_IN_FLIGHT = maxInFlight != null ? Integer.parseInt(maxInFlight)
+                : Settings.getInt("ararajuba.delivery.max-in-flight", 100);
+        String ackTimeout = System.getProperty("andorinha.delivery.ack-timeout.ms", System.getenv("ANDORINHA_ACK_TIMEOUT_MS"));
+        ACK_TIMEOUT_MS = ackTimeout != null ? Long.parseLong(ackTimeout)
+                : Settings.getLong("ararajuba.delivery.ack-timeout.ms", 15000L);
+        FRAME_CACHE_ENTRIES = Settings.getInt("ararajuba.delivery.frame-cache.entries", 4096);
+        sender = ExecutionMode.fromSettings().executor("ararajuba-delivery", scheduler);
+        partitioner.onCreated(this::topicCreated);
+
+        scheduler.scheduleAtFixedRate(
+                () -> ackTimeouts.advance(System.currentTimeMillis(), this::expire),
+                TIMER_TICK_MS, TIMER_TICK_MS, TimeUnit.MILLISECONDS);
+    }
 
+    // Cada partição do tópico fica com um único membro do grupo; entrar ou sair refaz a atribuição.
+    // Sem grupo (null), a sessão recebe todas as partições sozinha, como antes dos grupos, e usa o committed
+    // compartilhado de ANONYMOUS_GROUP. fromOffset/fromTs (-1 para nenhum) começam a entrega ali em vez do committed.
+    public void register(String topic, String group, Session s, long fromOffset, long fromTs) {
+        try {
+            GroupKey key = group == null
+                    ? new GroupKey(topic, ANONYMOUS_GROUP + "#" + s.getId())
+                    : new GroupKey(topic, group);
+            Member member = new Member(topic, group == null ? ANONYMOUS_GROUP : group, s, key, fromOffset, fromTs);
+            clients.put(s, member);
+            while (true) {
+                Group g = groups.computeIfAbsent(key, k -> new Group());
+                g.lock.lock();
+                try {
+                    // Grupo esvaziado e removido por um unregister concorrente: pega o novo
+                    if (g.dead) continue;
+                    g.members.add(member);
+                    rebalance(g);
+                    return;
+                } finally {
+                    g.lock.unlock();
+                }
+            }
+        } catch (Exception e) {
+            unregister(s);
+        }
+    }
 
-        scheduler.scheduleAtFixedRate(this::tick, 200, 50, TimeUnit.MILLISECONDS);
+    public void unregister(Session s) {
+        Member member = clients.remove(s);
+        if (member != null) {
+            GroupKey key = member.key;
+            Group g = groups.get(key);
+            if (g != null) {
+                g.lock.lock();
+                try {
+                    g.members.remove(member);
+                    assign(member, 0, 0);
+                    if (g.members.isEmpty()) {
+                        g.dead = true;
+                        groups.remove(key, g);
+                    } else {
+                        rebalance(g);
+                    }
+                } finally {
+                    g.lock.unlock();
+                }
+            }
+            releaseFrameCaches(member.topic);
+        }
+        closeQuiet(s);
+    }
+
+    // Assinaturas feitas antes da primeira publicação recebem as partições agora
+    private void topicCreated(String topic) {
+        for (Map.Entry<GroupKey, Group> e : groups.entrySet()) {
+            if (!e.getKey().topic().equals(topic)) continue;
+            Group g = e.getValue();
+            g.lock.lock();
+            try {
+                if (!g.dead) rebalance(g);
+            } finally {
+                g.lock.unlock();
+            }
+        }
+    }
+
+    // Atribuição por faixas: n partições para m membros, os n % m primeiros levam uma a mais.
+    // Membros além do número de partições ficam ociosos até alguém sair.
+    private void rebalance(Group g) {
+        int m = g.members.size();
+        if (m == 0) return;
+        // Tópico que ainda não existe fica sem partições até a primeira publicação (ver topicCreated)
+        int n = partitioner.existing(g.members.get(0).topic);
+        int base = n / m;
+        int extra = n % m;
+        for (int i = 0; i < m; i++) {
+            int from = i * base + Math.min(i, extra);
+            assign(g.members.get(i), from, from + base + (i < extra ? 1 : 0));
+        }
+    }
 
+    // Revoga as partições fora de [from, to) e abre contexto para as novas, a partir do committed do grupo.
+    // O que estava em voo na partição revogada e ainda não foi confirmado é reentregue pelo novo dono.
+    private void assign(Member member, int from, int to) {
+        List<ClientCtx> kept = new ArrayList<>();
+        boolean[] owned = new boolean[Math.max(to, 0)];
+        for (ClientCtx ctx : member.ctxs) {
+            if (ctx.partition >= from && ctx.partition < to) {
+                kept.add(ctx);
+                owned[ctx.partition] = true;
+            } else {
+                revoke(ctx);
+            }
+        }
 
-        scheduler.scheduleAtFixedRate(this::retryUnacked, 1, 1, TimeUnit.SECONDS);
+        List<ClientCtx> added = new ArrayList<>();
+        for (int p = from; p < to; p++) {
+            if (owned[p]) continue;
+            String pt = partitioner.partitionTopic(member.topic, p);
+            long start = !member.assigned && member.fromOffset >= 0 ? member.fromOffset
+                    : !member.assigned && member.fromTs >= 0 ? 0
+                    : state.getCommitted(pt, member.group) + 1;
+            ClientCtx ctx = new ClientCtx(pt, p, member.group, member.session, start, MAX_IN_FLIGHT);
+            if (!member.assigned && member.fromTs >= 0) ctx.seekTs = member.fromTs;
+            // Só acorda a sessão se o append trouxe algo que ela ainda não viu e há janela livre
+            ctx.listener = (t, highWater) -> {
+                if (highWater >= ctx.nextOffset && ctx.pending.size() < MAX_IN_FLIGHT) wake(ctx);
+            };
+            added.add(ctx);
+        }
+        if (kept.isEmpty() && added.isEmpty() && member.ctxs.isEmpty()) return;
+
+        if (to > from) member.assigned = true;
+        kept.addAll(added);
+        kept.sort(Comparator.comparingInt(c -> c.partition));
+        member.ctxs = List.copyOf(kept);
+        for (ClientCtx ctx : added) {
+            dispatcher.subscribe(ctx.topic, ctx.listener);
+            // Partição ainda em recuperação na partida: a primeira entrega sai quando a carga terminar
+            CompletableFuture<Void> loaded = log.whenLoaded(ctx.topic);
+            if (loaded.isDone()) wake(ctx);
+            else loaded.thenRun(() -> wake(ctx));
+        }
     }
 
-    public void register(String topic, String group, Session s) {
+    private void revoke(ClientCtx ctx) {
+        dispatcher.unsubscribe(ctx.topic, ctx.listener);
+        // Espera a rodada de entrega em andamento terminar; depois disso nada mais sai por este ctx
+        ctx.lock.lock();
         try {
-            long committed = state.getCommitted(topic, group);
-            long next = committed + 1;
-            ClientCtx ctx = new ClientCtx(topic, group, s, next);
-            clients.put(s, ctx);
-            deliverMore(ctx);
-        } catch (Exception e) {
-            closeQuiet(s);
+            ctx.closed = true;
+            Metrics.DELIVERY_IN_FLIGHT.add(-ctx.pending.size());
+            ctx.pending.clear();
+        } finally {
+            ctx.lock.unlock();
         }
     }
 
-    public void unregister(Session s) {
-        clients.remove(s);
-        closeQuiet(s);
+    private void releaseFrameCaches(String topic) {
+        for (String pt : partitioner.partitionTopics(topic)) {
+            boolean inUse = clients.values().stream()
+                    .flatMap(m -> m.ctxs.stream())
+                    .anyMatch(c -> c.topic.equals(pt));
+            if (!inUse) frameCaches.remove(pt);
+        }
     }
 
+    private ClientCtx ctxFor(Session s, long epoch) {
+        Member member = clients.get(s);
+        if (member == null) return null;
+        for (ClientCtx ctx : member.ctxs) {
+            if (ctx.epoch == epoch) return ctx;
+        }
+        return null;
+    }
 
     public void ack(Session s, String json) {
-        ClientCtx ctx = clients.get(s);
-        if (ctx == null) return;
         try {
             var node = om.readTree(json);
             if (!node.has("ack")) return;
 
             String deliveryId = node.get("ack").asText();
-            Long off = ctx.pending.remove(deliveryId);
-            if (off == null) {
+            ClientCtx ctx = ctxFor(s, deliveryEpoch(deliveryId));
+            if (ctx == null) return;
+            long off = deliveryOffset(deliveryId);
+            if (off < 0) return;
 
-                return;
+            ctx.lock.lock();
+            try {
+                long deadline = ctx.pending.remove(off);
+                if (deadline == LongLongHashMap.MISSING) return;
+                Metrics.DELIVERY_IN_FLIGHT.add(-1);
+                recordAckLatency(deadline, System.currentTimeMillis());
+            } finally {
+                ctx.lock.unlock();
             }
 
-            long committed = state.getCommitted(ctx.topic, ctx.group);
+            state.ack(ctx.topic, ctx.group, log.logStartOffset(ctx.topic), t -> t.ack(off));
 
-            if (off == committed + 1) {
+            wake(ctx);
 
-                long advance = off;
+        } catch (Exception ignored) {}
+    }
 
+    // Ack cumulativo do protocolo binário: confirma tudo que já foi entregue até o offset
+    public void ackUpTo(Session s, ByteBuffer msg) {
+        try {
+            ClientCtx ctx = ctxFor(s, BinaryFrames.ackEpoch(msg));
+            if (ctx == null) return;
+            long requested = BinaryFrames.ackOffset(msg);
+            if (requested < 0) return;
 
-                while (ctx.ackedNotCommitted.contains(advance + 1)) {
-                    ctx.ackedNotCommitted.remove(advance + 1);
-                    advance = advance + 1;
-                }
-                state.commit(ctx.topic, ctx.group, advance);
-            } else if (off > committed + 1) {
-                ctx.ackedNotCommitted.add(off);
+            long upTo;
+            ctx.lock.lock();
+            try {
+                upTo = Math.min(requested, ctx.delivered);
+                if (upTo < 0) return;
+                long[] acked = new long[ctx.pending.size()];
+                int[] count = {0};
+                long now = System.currentTimeMillis();
+                ctx.pending.forEach((off, deadline) -> {
+                    if (off <= upTo) {
+                        acked[count[0]++] = off;
+                        recordAckLatency(deadline, now);
+                    }
+                });
+                for (int i = 0; i < count[0]; i++) ctx.pending.remove(acked[i]);
+                Metrics.DELIVERY_IN_FLIGHT.add(-count[0]);
+                // Se algo expirou e a sessão foi rebobinada, o cliente já confirmou até aqui
+                if (ctx.nextOffset <= upTo) ctx.nextOffset = upTo + 1;
+            } finally {
+                ctx.lock.unlock();
             }
 
-            deliverMore(ctx);
+            state.ack(ctx.topic, ctx.group, log.logStartOffset(ctx.topic), t -> t.ackUpTo(upTo));
+
+            wake(ctx);
 
         } catch (Exception ignored) {}
     }
 
-    private void deliverMore(ClientCtx ctx) {
-
-        if (ctx == null || ctx.session == null || !ctx.session.isOpen()) return;
+    // -1 se o id está malformado
+    private static long deliveryEpoch(String deliveryId) {
+        int sep = deliveryId.indexOf(':');
+        if (sep <= 0) return -1;
+        try {
+            return Long.parseLong(deliveryId, 0, sep, 10);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
 
-        while (ctx.pending.size() < MAX_IN_FLIGHT) {
-            try {
+    private static long deliveryOffset(String deliveryId) {
+        int sep = deliveryId.indexOf(':');
+        if (sep <= 0) return -1;
+        try {
+            return Long.parseLong(deliveryId, sep + 1, deliveryId.length(), 10);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
 
-                java.util.Optional<MessageRecord> recOpt =
-                        log.read(ctx.topic, ctx.nextOffset);
+    private void wake(ClientCtx ctx) {
+        if (!ctx.wakeScheduled.compareAndSet(false, true)) return;
+        sender.execute(() -> {
+            ctx.wakeScheduled.set(false);
+            deliverMore(ctx);
+        });
+    }
 
-                if (recOpt.isEmpty()) break;
+    private void deliverMore(ClientCtx ctx) {
 
-                MessageRecord r = recOpt.get();
+        if (ctx == null || ctx.session == null || !ctx.session.isOpen()) return;
+        if (ctx.closed) return;
 
-                String deliveryId = java.util.UUID.randomUUID().toString();
+        ctx.lock.lock();
+        try {
+            // Partição revogada enquanto a rodada esperava o lock
+            if (ctx.closed) return;
+            if (ctx.seekTs >= 0) {
+                try {
+                    ctx.nextOffset = log.offsetForTimestamp(ctx.topic, ctx.seekTs);
+                } catch (java.io.IOException io) {
+                    closeQuiet(ctx.session);
+                    return;
+                }
+                ctx.seekTs = -1;
+            }
+            deliverBatch(ctx);
+        } finally {
+            ctx.lock.unlock();
+        }
+    }
 
-                java.util.Map<String, Object> frame = new java.util.LinkedHashMap<>();
-                frame.put("deliveryId", deliveryId);
-                frame.put("offset", r.offset());
-                frame.put("ts", r.ts());
-                frame.put("key", (r.key() == null ? null
-                        : new String(r.key(), java.nio.charset.StandardCharsets.UTF_8)));
-                frame.put("value", (r.value() == null ? null
-                        : new String(r.value(), java.nio.charset.StandardCharsets.UTF_8)));
+    private void deliverBatch(ClientCtx ctx) {
+        while (ctx.pending.size() < MAX_IN_FLIGHT) {
+            try {
 
-                String payload = om.writeValueAsString(frame);
-                ctx.session.getAsyncRemote().sendText(payload);
+                long start = log.logStartOffset(ctx.topic);
+                if (ctx.nextOffset < start) ctx.nextOffset = start;
+
+                // Os frames são montados dentro da leitura, direto das RecordViews; o envio fica para depois dela
+                long first = ctx.nextOffset;
+                int max = MAX_IN_FLIGHT - ctx.pending.size();
+                List<String> texts = null;
+                int n;
+                if (ctx.binary) {
+                    ctx.batch.begin(ctx.epoch, ctx.partition);
+                    n = log.readRange(ctx.topic, first, max, MAX_BATCH_BYTES, ctx.batch::add);
+                } else {
+                    FrameCache frames = frameCaches.computeIfAbsent(ctx.topic, t -> new FrameCache(FRAME_CACHE_ENTRIES, ctx.partition));
+                    List<String> out = new ArrayList<>();
+                    n = log.readRange(ctx.topic, first, max, MAX_BATCH_BYTES, r -> out.add(frames.frame(ctx.epoch, r, om)));
+                    texts = out;
+                }
 
-                ctx.pending.put(deliveryId, r.offset());
+                if (n == 0) break;
 
-                ctx.nextOffset = r.offset() + 1;
+                long deadline = System.currentTimeMillis() + ACK_TIMEOUT_MS;
+                if (ctx.binary) {
+                    ctx.session.getAsyncRemote().sendBinary(ctx.batch.frame());
+                } else {
+                    for (String text : texts) ctx.session.getAsyncRemote().sendText(text);
+                }
 
-                scheduler.schedule(
-                        () -> timeoutCheck(ctx, deliveryId),
-                        ACK_TIMEOUT_MS,
-                        java.util.concurrent.TimeUnit.MILLISECONDS
-                );
+                // Offsets do log são contíguos: a leitura devolveu [first, first + n)
+                long last = first + n - 1;
+                // Reentrega depois de expire() renova o prazo de offsets que já estavam pendentes: só os novos contam
+                int added = 0;
+                for (long off = first; off <= last; off++) {
+                    if (ctx.pending.put(off, deadline) == LongLongHashMap.MISSING) added++;
+                }
+                Metrics.DELIVERY_IN_FLIGHT.add(added);
+                ctx.nextOffset = last + 1;
+                ctx.delivered = Math.max(ctx.delivered, last);
+
+                // Um único timer por sessão, armado no prazo mais próximo
+                if (!ctx.timerArmed) {
+                    ctx.timerArmed = true;
+                    ackTimeouts.schedule(ctx, deadline);
+                }
 
             } catch (java.io.IOException io) {
                 closeQuiet(ctx.session);
@@ -166,46 +487,52 @@ public class DeliveryService {
     }
 
 
-    private void timeoutCheck(ClientCtx ctx, String deliveryId) {
-        if (!clients.containsKey(ctx.session)) return;
-
-        Long off = ctx.pending.remove(deliveryId);
-        if (off != null) {
-            if (off < ctx.nextOffset) {
-                ctx.nextOffset = off;
-            }
-            deliverMore(ctx);
-        }
+    // Expira em lote todas as entregas vencidas da sessão e rearma o timer para o próximo prazo
+    // pending guarda só o prazo: o envio foi em prazo - ACK_TIMEOUT_MS
+    private void recordAckLatency(long deadline, long now) {
+        Metrics.DELIVERY_ACK_LATENCY.record((now - (deadline - ACK_TIMEOUT_MS)) * 1_000_000L);
     }
 
+    private void expire(ClientCtx ctx) {
+        if (ctx.closed) return;
 
-    private void tick() {
-        clients.values().forEach(this::deliverMore);
-    }
-
-    private void retryUnacked() {
-        for (ClientCtx ctx : clients.values()) {
-            if (!ctx.session.isOpen()) continue;
+        long minExpired = Long.MAX_VALUE;
+        ctx.lock.lock();
+        try {
+            ctx.timerArmed = false;
+            if (ctx.closed) return;
+            long now = System.currentTimeMillis();
+            long[] expired = new long[ctx.pending.size()];
+            int[] count = {0};
+            long[] nextDeadline = {Long.MAX_VALUE};
+
+            ctx.pending.forEach((off, deadline) -> {
+                if (deadline <= now) {
+                    expired[count[0]++] = off;
+                } else {
+                    nextDeadline[0] = Math.min(nextDeadline[0], deadline);
+                }
+            });
 
-            if (dispatcher.hasNewData(ctx.topic)) {
-                deliverMore(ctx);
+            for (int i = 0; i < count[0]; i++) {
+                ctx.pending.remove(expired[i]);
+                minExpired = Math.min(minExpired, expired[i]);
             }
+            Metrics.DELIVERY_IN_FLIGHT.add(-count[0]);
+            Metrics.DELIVERY_REDELIVERIES.add(count[0]);
+            if (minExpired < ctx.nextOffset) ctx.nextOffset = minExpired;
 
-
-            if (ctx.pending.isEmpty()) {
-                deliverMore(ctx);
+            if (!ctx.pending.isEmpty()) {
+                ctx.timerArmed = true;
+                ackTimeouts.schedule(ctx, nextDeadline[0]);
             }
+        } finally {
+            ctx.lock.unlock();
         }
-
-        try {
-            Set<String> signaled = new HashSet<>();
-            for (ClientCtx ctx : clients.values()) {
-                if (dispatcher.hasNewData(ctx.topic)) signaled.add(ctx.topic);
-            }
-            for (String t : signaled) dispatcher.clear(t);
-        } catch (Exception ignored) {}
+        if (minExpired != Long.MAX_VALUE) wake(ctx);
     }
 
+
     private void closeQuiet(Session s) {
         try { s.close(); } catch (Exception ignored) {}
     }
@@ -2,22 +2,86 @@ package br.iff.edu.ararajuba.core;
 
 import jakarta.enterprise.context.ApplicationScoped;
 
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @ApplicationScoped
 public class Dispatcher {
-    private final Set<String> topicsWithNewData = ConcurrentHashMap.newKeySet();
 
+    // Chamado na thread de quem publicou: deve só sinalizar e devolver, sem I/O
+    @FunctionalInterface
+    public interface Listener {
+        void onAppend(String topic, long highWater);
+    }
+
+    private final Map<String, TopicChannel> channels = new ConcurrentHashMap<>();
+
+    private static final class TopicChannel {
+        final AtomicLong highWater = new AtomicLong(-1);
+        final Set<Waiter> waiters = ConcurrentHashMap.newKeySet();
+        final Set<Listener> listeners = ConcurrentHashMap.newKeySet();
+    }
+
+    private static final class Waiter {
+        final long offset;
+        final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        Waiter(long offset) {
+            this.offset = offset;
+        }
+    }
+
+    private TopicChannel channel(String topic) {
+        return channels.computeIfAbsent(topic, t -> new TopicChannel());
+    }
+
+    // Só o tópico afetado é acordado: waiters de long-poll e os assinantes registrados nele
     public void enqueue(String topic, long offset){
-        topicsWithNewData.add(topic);
+        TopicChannel tc = channel(topic);
+        long hw = tc.highWater.accumulateAndGet(offset, Math::max);
+
+        for (Waiter w : tc.waiters) {
+            if (w.offset <= hw && tc.waiters.remove(w)) w.future.complete(true);
+        }
+        for (Listener l : tc.listeners) {
+            l.onAppend(topic, hw);
+        }
+    }
+
+    public void subscribe(String topic, Listener listener){
+        channel(topic).listeners.add(listener);
     }
 
-    public boolean hasNewData(String topic){
-        return topicsWithNewData.contains(topic);
+    public void unsubscribe(String topic, Listener listener){
+        TopicChannel tc = channels.get(topic);
+        if (tc != null) tc.listeners.remove(listener);
     }
 
-    public void clear(String topic){
-        topicsWithNewData.remove(topic);
+    // Maior offset anunciado desde o start; -1 se nada foi publicado no tópico
+    public long highWater(String topic){
+        TopicChannel tc = channels.get(topic);
+        return tc == null ? -1 : tc.highWater.get();
+    }
+
+    // Completa com true quando o tópico recebe o offset esperado, ou false no timeout.
+    // Não ocupa thread enquanto espera.
+    public CompletableFuture<Boolean> awaitOffset(String topic, long offset, long timeoutMs){
+        TopicChannel tc = channel(topic);
+        Waiter w = new Waiter(offset);
+        tc.waiters.add(w);
+
+        // enqueue publica highWater antes de varrer os waiters; aqui é o inverso, então ninguém se perde
+        if (tc.highWater.get() >= offset) {
+            if (tc.waiters.remove(w)) w.future.complete(true);
+            return w.future;
+        }
+
+        w.future.completeOnTimeout(false, timeoutMs, TimeUnit.MILLISECONDS)
+                .whenComplete((r, e) -> tc.waiters.remove(w));
+        return w.future;
     }
 }
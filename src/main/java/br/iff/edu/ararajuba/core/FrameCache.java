@@ -0,0 +1,60 @@
+package br.iff.edu.ararajuba.core;
+
+import br.iff.edu.ararajuba.log.RecordView;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Frame JSON de cada registro serializado uma vez e compartilhado por todas as sessões da partição.
+// Guarda só o que vem depois do deliveryId, que é a única parte que muda por sessão.
+// Mapeamento direto por offset, sem lock: colisão apenas substitui a entrada do slot.
+final class FrameCache {
+
+    // Registros maiores que isso são serializados a cada entrega em vez de ficar em memória
+    private static final int MAX_CACHED_FRAME = 64 * 1024;
+
+    private record Frame(long offset, String suffix) {}
+
+    private final AtomicReferenceArray<Frame> slots;
+    private final int mask;
+    private final int partition;
+
+    FrameCache(int entries, int partition) {
+        this.partition = partition;
+        int size = Integer.highestOneBit(Math.max(2, entries - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    // Chamado dentro da leitura: as Strings de key e value só são criadas quando o frame não está no cache
+    String frame(long epoch, RecordView r, ObjectMapper om) {
+        return "{\"deliveryId\":\"" + epoch + ":" + r.offset() + "\"," + suffix(r, om);
+    }
+
+    private String suffix(RecordView r, ObjectMapper om) {
+        int slot = (int) (r.offset() & mask);
+        Frame f = slots.get(slot);
+        if (f != null && f.offset() == r.offset()) return f.suffix();
+
+        Map<String, Object> frame = new LinkedHashMap<>();
+        frame.put("offset", r.offset());
+        frame.put("ts", r.ts());
+        frame.put("key", r.keyString());
+        frame.put("value", r.valueString());
+        frame.put("partition", partition);
+
+        // Sem a chave de abertura: o prefixo com o deliveryId a recoloca
+        String suffix;
+        try {
+            suffix = om.writeValueAsString(frame).substring(1);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (suffix.length() <= MAX_CACHED_FRAME) slots.set(slot, new Frame(r.offset(), suffix));
+        return suffix;
+    }
+}
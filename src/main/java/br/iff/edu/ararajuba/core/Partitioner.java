@@ -0,0 +1,141 @@
+package br.iff.edu.ararajuba.core;
+
+import br.iff.edu.ararajuba.log.CommitLog;
+import br.iff.edu.ararajuba.util.Settings;
+import br.iff.edu.ararajuba.util.TopicNames;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+// Decide em quantas partições um tópico é dividido e para qual delas vai cada mensagem.
+// Mesma chave, mesma partição: a ordem por chave é preservada. Sem chave, roda entre as partições.
+@ApplicationScoped
+public class Partitioner {
+
+    @Inject
+    CommitLog log;
+
+    private final Map<String, Integer> counts = new ConcurrentHashMap<>();
+    private final AtomicInteger roundRobin = new AtomicInteger();
+    // Serializa só a primeira resolução de cada tópico; fora do computeIfAbsent, cujo lock do bin
+    // seguraria a carrier de uma virtual thread durante a carga do tópico
+    private final ReentrantLock resolving = new ReentrantLock();
+    private final List<Consumer<String>> createdListeners = new CopyOnWriteArrayList<>();
+
+    // Caminho de publicação: o que já existe manda; só tópicos novos usam ararajuba.topic.partitions
+    public int count(String topic) {
+        Integer n = counts.get(topic);
+        if (n != null) return n;
+        boolean created = false;
+        resolving.lock();
+        try {
+            n = counts.get(topic);
+            if (n == null) {
+                n = existingPartitions(topic);
+                if (n == 0) {
+                    n = create(topic);
+                    created = true;
+                }
+                counts.put(topic, n);
+            }
+        } finally {
+            resolving.unlock();
+        }
+        if (created) {
+            for (Consumer<String> l : createdListeners) l.accept(topic);
+        }
+        return n;
+    }
+
+    // Caminho de leitura (poll, ack, assinatura): 0 se o tópico não existe, sem criar nada em disco
+    public int existing(String topic) {
+        Integer n = counts.get(topic);
+        if (n != null) return n;
+        // Sob o mesmo lock da criação, para não ver um tópico com só parte das partições criadas
+        resolving.lock();
+        try {
+            n = counts.get(topic);
+            if (n != null) return n;
+            n = existingPartitions(topic);
+            if (n > 0) counts.put(topic, n);
+            return n;
+        } finally {
+            resolving.unlock();
+        }
+    }
+
+    // Chamado uma vez por tópico criado na publicação, fora do lock de resolução
+    public void onCreated(Consumer<String> listener) {
+        createdListeners.add(listener);
+    }
+
+    // Contagem pelo que existe em disco; 0 se o tópico não existe
+    private int existingPartitions(String topic) {
+        try {
+            List<String> existing = log.listTopics();
+            int max = -1;
+            for (String name : existing) {
+                int p = TopicNames.partitionOf(name);
+                if (p >= 0 && TopicNames.logicalTopic(name).equals(topic)) max = Math.max(max, p);
+            }
+            if (max >= 0) return max + 1;
+            return existing.contains(topic) ? 1 : 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao resolver partições do tópico " + topic, e);
+        }
+    }
+
+    private int create(String topic) {
+        try {
+            int n = Math.max(1, Settings.getInt("ararajuba.topic.partitions", 1));
+            // Cria todas as partições já, para que a contagem sobreviva ao restart
+            for (int p = 0; p < n; p++) log.nextOffset(TopicNames.partitionTopic(topic, p, n));
+            return n;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao criar partições do tópico " + topic, e);
+        }
+    }
+
+    public String partitionTopic(String topic, int partition) {
+        return TopicNames.partitionTopic(topic, partition, existing(topic));
+    }
+
+    public List<String> partitionTopics(String topic) {
+        int n = existing(topic);
+        List<String> out = new ArrayList<>(n);
+        for (int p = 0; p < n; p++) out.add(TopicNames.partitionTopic(topic, p, n));
+        return out;
+    }
+
+    public int partitionFor(String topic, byte[] key) {
+        int n = count(topic);
+        if (n == 1) return 0;
+        if (key == null) return nextRoundRobin(n);
+        return Math.floorMod(mix(Arrays.hashCode(key)), n);
+    }
+
+    private int nextRoundRobin(int n) {
+        return Math.floorMod(roundRobin.getAndIncrement(), n);
+    }
+
+    // Finalizador do murmur3: espalha os bits do hash antes do módulo
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
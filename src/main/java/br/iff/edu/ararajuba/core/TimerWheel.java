@@ -0,0 +1,64 @@
+package br.iff.edu.ararajuba.core;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+// Roda de temporização com hash: cada slot cobre tickMs e prazos além de uma volta ficam no slot
+// até a volta certa. Agendar e expirar são O(1) amortizado, sem uma tarefa por item no executor.
+final class TimerWheel<T> {
+
+    private record Entry<T>(T item, long deadlineTick) {}
+
+    private final long tickMs;
+    private final List<Entry<T>>[] slots;
+    private final int mask;
+    private long currentTick;
+    // Agendado de dentro das rodadas de entrega, que podem rodar em virtual threads: lock em vez de monitor
+    private final ReentrantLock lock = new ReentrantLock();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    TimerWheel(long tickMs, int wheelSize, long nowMs) {
+        int size = Integer.highestOneBit(Math.max(2, wheelSize - 1)) << 1;
+        this.tickMs = tickMs;
+        this.slots = new List[size];
+        for (int i = 0; i < size; i++) slots[i] = new ArrayList<>();
+        this.mask = size - 1;
+        this.currentTick = nowMs / tickMs;
+    }
+
+    void schedule(T item, long deadlineMs) {
+        lock.lock();
+        try {
+            long tick = Math.max((deadlineMs + tickMs - 1) / tickMs, currentTick);
+            slots[(int) (tick & mask)].add(new Entry<>(item, tick));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Processa todos os ticks até nowMs e entrega os itens vencidos fora do lock
+    void advance(long nowMs, Consumer<T> expired) {
+        long target = nowMs / tickMs;
+        List<T> due = new ArrayList<>();
+        lock.lock();
+        try {
+            while (currentTick <= target) {
+                Iterator<Entry<T>> it = slots[(int) (currentTick & mask)].iterator();
+                while (it.hasNext()) {
+                    Entry<T> e = it.next();
+                    if (e.deadlineTick() <= currentTick) {
+                        it.remove();
+                        due.add(e.item());
+                    }
+                }
+                currentTick++;
+            }
+        } finally {
+            lock.unlock();
+        }
+        due.forEach(expired);
+    }
+}
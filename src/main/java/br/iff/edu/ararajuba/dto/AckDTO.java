@@ -2,7 +2,10 @@ package br.iff.edu.ararajuba.dto;
 
 import java.util.List;
 
-public record AckDTO(List<String> deliveryIds) {
+// deliveryIds aceita offsets ("42") e intervalos fechados ("40-42"); upTo confirma tudo até o offset
+public record AckDTO(List<String> deliveryIds, Long upTo) {
+
+    public AckDTO(List<String> deliveryIds) {this(deliveryIds, null);}
 
     public List<String> ids() {return deliveryIds;}
 }
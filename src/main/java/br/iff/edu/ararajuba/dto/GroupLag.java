@@ -0,0 +1,4 @@
+package br.iff.edu.ararajuba.dto;
+
+// lag: registros ainda no log depois do último confirmado pelo grupo
+public record GroupLag(String group, long committedOffset, long lag) {}
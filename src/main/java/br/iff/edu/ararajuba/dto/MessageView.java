@@ -1,4 +1,4 @@
 package br.iff.edu.ararajuba.dto;
 
-public record MessageView (long offset, long ts, String key, String value){
+public record MessageView (long offset, long ts, String key, String value, int partition){
 }
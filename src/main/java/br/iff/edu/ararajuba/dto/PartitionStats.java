@@ -0,0 +1,7 @@
+package br.iff.edu.ararajuba.dto;
+
+import java.util.List;
+
+// endOffset é o próximo offset a ser gravado; appendRate em registros por segundo no último minuto
+public record PartitionStats(int partition, long logStartOffset, long endOffset, long sizeBytes,
+                             double appendRate, List<GroupLag> groups) {}
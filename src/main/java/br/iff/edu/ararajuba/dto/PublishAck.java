@@ -0,0 +1,7 @@
+package br.iff.edu.ararajuba.dto;
+
+// Faixa contígua de offsets gravada numa partição
+public record PublishAck(int partition, long firstOffset, int count) {
+
+    public long lastOffset() {return firstOffset + count - 1;}
+}
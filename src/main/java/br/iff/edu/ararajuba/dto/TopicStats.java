@@ -0,0 +1,5 @@
+package br.iff.edu.ararajuba.dto;
+
+import java.util.List;
+
+public record TopicStats(String topic, List<PartitionStats> partitions) {}
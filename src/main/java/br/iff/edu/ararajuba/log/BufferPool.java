@@ -0,0 +1,60 @@
+package br.iff.edu.ararajuba.log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Buffers diretos reaproveitados entre escritas e leituras do log, por classe de tamanho (potências de 2
+// de 4 KiB a 4 MiB). Cada classe tem um número fixo de vagas trocadas com getAndSet/compareAndSet:
+// pegar e devolver não aloca nada. Pedido maior que a maior classe vira um buffer de heap avulso.
+final class BufferPool {
+
+    private static final int MIN_SHIFT = 12;
+    private static final int MAX_SHIFT = 22;
+    private static final int SLOTS = Math.min(64, Runtime.getRuntime().availableProcessors() * 2);
+
+    private static final AtomicReferenceArray<ByteBuffer>[] CLASSES = classes();
+
+    private BufferPool(){}
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static AtomicReferenceArray<ByteBuffer>[] classes() {
+        AtomicReferenceArray<ByteBuffer>[] c = new AtomicReferenceArray[MAX_SHIFT - MIN_SHIFT + 1];
+        for (int i = 0; i < c.length; i++) c[i] = new AtomicReferenceArray<>(SLOTS);
+        return c;
+    }
+
+    // Big-endian, posição 0 e limite na capacidade, que pode ser maior que o pedido
+    static ByteBuffer acquire(int capacity) {
+        int shift = Math.max(MIN_SHIFT, 32 - Integer.numberOfLeadingZeros(Math.max(1, capacity) - 1));
+        if (shift > MAX_SHIFT) return ByteBuffer.allocate(capacity);
+
+        AtomicReferenceArray<ByteBuffer> slots = CLASSES[shift - MIN_SHIFT];
+        for (int i = 0; i < SLOTS; i++) {
+            if (slots.get(i) == null) continue;
+            ByteBuffer b = slots.getAndSet(i, null);
+            if (b != null) return b.clear().order(ByteOrder.BIG_ENDIAN);
+        }
+        return ByteBuffer.allocateDirect(1 << shift).order(ByteOrder.BIG_ENDIAN);
+    }
+
+    // Com a classe cheia, o buffer fica para o GC
+    static void release(ByteBuffer b) {
+        if (b == null || !b.isDirect()) return;
+        int shift = Integer.numberOfTrailingZeros(b.capacity());
+        if (shift < MIN_SHIFT || shift > MAX_SHIFT || b.capacity() != 1 << shift) return;
+
+        AtomicReferenceArray<ByteBuffer> slots = CLASSES[shift - MIN_SHIFT];
+        for (int i = 0; i < SLOTS; i++) {
+            if (slots.get(i) == null && slots.compareAndSet(i, null, b)) return;
+        }
+    }
+
+    // Buffer com pelo menos minCapacity e o conteúdo [0, position) de b; devolve b ao pool
+    static ByteBuffer grow(ByteBuffer b, int minCapacity) {
+        ByteBuffer bigger = acquire(Math.max(minCapacity, b.capacity() << 1));
+        bigger.put(b.flip());
+        release(b);
+        return bigger;
+    }
+}
@@ -1,173 +1,709 @@
 package br.iff.edu.ararajuba.log;
 
+import br.iff.edu.ararajuba.metrics.Metrics;
+import br.iff.edu.ararajuba.metrics.RateWindow;
+import br.iff.edu.ararajuba.util.Settings;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
+import org.jboss.logging.Logger;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-
-import static java.nio.file.StandardOpenOption.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 @ApplicationScoped
 public class CommitLog {
 
+    private static final Logger LOG = Logger.getLogger(CommitLog.class);
+
     private Path baseDir;
 
+    private LogConfig config;
+
+    // Limite de registros por escrita agrupada (IOV_MAX típico do Linux)
+    private static final int MAX_WRITE_BATCH = 1024;
+
+    private static final long MTIME_SLACK_MS = 1000;
+
+    // Tamanho descomprimido alvo de cada lote v1: quem lê do meio descomprime no máximo isso a mais
+    private static final int MAX_COMPRESSED_BATCH = 64 * 1024;
+
     private static class TopicState {
-        Segment segment;
-        long baseOffset;
+        final Path dir;
+        final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+        volatile Segment active;
+        volatile long logStartOffset;
+        TailCache tail;
+
+        // Contadores para as estatísticas: acompanham append e retenção, sem consultar o disco
+        final AtomicLong sizeBytes = new AtomicLong();
+        final RateWindow appendRate = new RateWindow();
+
+        // Fila de appends do tópico; quem segura writeLock escreve por todos (segmentos, unflushed)
+        final Queue<PendingAppend> queue = new ConcurrentLinkedQueue<>();
+        final ReentrantLock writeLock = new ReentrantLock();
+        final List<PendingAppend> unflushed = new ArrayList<>();
+        // Registros (não appends) em unflushed: um lote conta todas as suas mensagens para flush.records
+        int unflushedRecords;
+        long lastFlush = System.currentTimeMillis();
+
+        // Último ponto do segmento ativo com fsync feito e o último gravado em recovery-point
+        volatile RecoveryPoint durable;
+        RecoveryPoint checkpointed;
+
+        TopicState(Path dir) {
+            this.dir = dir;
+        }
+    }
+
+    // Unidade atômica de escrita: um registro ou um lote inteiro, que recebe offsets contíguos
+    private static final class PendingAppend {
+        final List<byte[]> keys;
+        final List<byte[]> values;
+        final CompletableFuture<Long> result = new CompletableFuture<>();
+        final long enqueued = System.nanoTime();
+        long offset;
+
+        PendingAppend(List<byte[]> keys, List<byte[]> values) {
+            this.keys = keys;
+            this.values = values;
+        }
 
-        final NavigableMap<Long, Long> sparseIndex = new TreeMap<>();
+        int count() {
+            return values.size();
+        }
     }
 
-    private final Map<String, TopicState> topics = new ConcurrentHashMap<>();
+    // O future entra no mapa na hora e a carga roda no pool de fora do lock do ConcurrentHashMap:
+    // quem chega durante a carga espera o future, não o bin do mapa
+    private final Map<String, CompletableFuture<TopicState>> topics = new ConcurrentHashMap<>();
+    private ExecutorService loader;
+    private volatile CompletableFuture<Void> startup = CompletableFuture.completedFuture(null);
+    private volatile boolean closed;
+
+    // Tópicos com registros escritos aguardando fsync (modos interval e records)
+    private final Set<TopicState> dirty = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ararajuba-log-flusher");
+        t.setDaemon(true);
+        return t;
+    });
 
     @PostConstruct
     void init() {
 
-        String dir = System.getProperty("ararajuba.data.dir");
-        if (dir == null) {
-            dir = System.getenv().getOrDefault("ARARAJUBA_DATA_DIR", "data");
-        }
+        String dir = Settings.get("ararajuba.data.dir", "data");
         baseDir = Paths.get(dir).resolve("topics");
+        config = LogConfig.fromSettings();
         try {
             Files.createDirectories(baseDir);
         } catch (IOException e) {
             throw new RuntimeException("Falha ao criar diretório base: " + baseDir, e);
         }
+        loader = Executors.newFixedThreadPool(config.recoveryThreads(), r -> {
+            Thread t = new Thread(r, "ararajuba-log-loader");
+            t.setDaemon(true);
+            return t;
+        });
+        startRecovery();
+
+        if (config.flushMode() == LogConfig.FlushMode.INTERVAL || config.flushMode() == LogConfig.FlushMode.RECORDS) {
+            long interval = config.flushIntervalMs();
+            flusher.scheduleAtFixedRate(this::flushDue, interval, interval, TimeUnit.MILLISECONDS);
+        }
+        long checkpoint = config.recoveryCheckpointMs();
+        flusher.scheduleWithFixedDelay(this::checkpointAll, checkpoint, checkpoint, TimeUnit.MILLISECONDS);
+    }
+
+    // Fase de partida: descobre os tópicos em baseDir e os recupera em paralelo no pool de carga,
+    // sem segurar o start da aplicação. isReady() diz quando todos terminaram.
+    private void startRecovery() {
+        long start = System.currentTimeMillis();
+        List<String> names;
+        try {
+            names = listTopics();
+        } catch (IOException e) {
+            throw new RuntimeException("Falha ao listar tópicos em " + baseDir, e);
+        }
+        if (names.isEmpty()) return;
+
+        List<CompletableFuture<TopicState>> all = new ArrayList<>(names.size());
+        for (String name : names) all.add(topicFuture(name));
+        startup = CompletableFuture.allOf(all.toArray(CompletableFuture[]::new))
+                .whenComplete((r, e) -> {
+                    if (e == null) {
+                        LOG.infof("%d tópicos recuperados em %d ms", names.size(), System.currentTimeMillis() - start);
+                    } else {
+                        LOG.error("Falha na recuperação de tópicos", e);
+                    }
+                });
+    }
+
+    public boolean isReady() {
+        return startup.isDone() && !startup.isCompletedExceptionally();
+    }
+
+    public CompletableFuture<Void> whenReady() {
+        return startup;
+    }
+
+    // Completa quando o tópico estiver carregado; carrega (ou cria) se ninguém pediu ainda
+    public CompletableFuture<Void> whenLoaded(String topic) {
+        return topicFuture(topic).thenApply(st -> null);
+    }
+
+    public int loadingTopics() {
+        int n = 0;
+        for (CompletableFuture<TopicState> f : topics.values()) {
+            if (!f.isDone()) n++;
+        }
+        return n;
+    }
+
+    private CompletableFuture<TopicState> topicFuture(String topic) {
+        CompletableFuture<TopicState> f = topics.get(topic);
+        if (f != null) return f;
+
+        CompletableFuture<TopicState> created = new CompletableFuture<>();
+        f = topics.putIfAbsent(topic, created);
+        if (f != null) return f;
+
+        loader.execute(() -> {
+            try {
+                created.complete(loadTopic(topic));
+            } catch (IOException | RuntimeException e) {
+                // Sai do mapa para que a próxima requisição tente de novo
+                topics.remove(topic, created);
+                created.completeExceptionally(e);
+            }
+        });
+        return created;
+    }
+
+    // Só os tópicos que já terminaram de carregar
+    private List<TopicState> loaded() {
+        List<TopicState> out = new ArrayList<>(topics.size());
+        for (CompletableFuture<TopicState> f : topics.values()) {
+            if (f.isDone() && !f.isCompletedExceptionally()) out.add(f.join());
+        }
+        return out;
     }
 
+    @PreDestroy
+    void close() {
+        closed = true;
+        flusher.shutdownNow();
+        // Cargas ainda em andamento são interrompidas; o tópico volta a ser recuperado na próxima partida
+        loader.shutdownNow();
+        try {
+            loader.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<TopicState> open = loaded();
+        for (TopicState st : open) {
+            st.writeLock.lock();
+            try {
+                // Appends que ainda estão na fila vão para o disco antes do último fsync
+                while (!st.queue.isEmpty()) drain(st);
+                flush(st);
+                // Também no modo none: no próximo start nada precisa ser conferido
+                st.active.flush();
+                markDurable(st);
+                checkpoint(st);
+            } catch (IOException e) {
+                LOG.warnf(e, "Falha ao fechar o tópico em %s", st.dir);
+            } finally {
+                st.writeLock.unlock();
+            }
+        }
+        for (TopicState st : open) {
+            for (Segment seg : st.segments.values()) {
+                try {
+                    seg.close();
+                } catch (IOException ignored) {}
+            }
+            // Append que passou pela checagem de closed durante o fechamento não chega a ser confirmado
+            IOException closedError = new IOException("CommitLog fechado");
+            PendingAppend p;
+            while ((p = st.queue.poll()) != null) p.result.completeExceptionally(closedError);
+            st.writeLock.lock();
+            try {
+                for (PendingAppend u : st.unflushed) u.result.completeExceptionally(closedError);
+                st.unflushed.clear();
+                st.unflushedRecords = 0;
+            } finally {
+                st.writeLock.unlock();
+            }
+        }
+    }
+
+    // Para as chamadas síncronas: se o tópico ainda está carregando, espera por ele
     private TopicState ensureTopic(String topic) throws IOException {
-        return topics.computeIfAbsent(topic, t -> {
+        CompletableFuture<TopicState> f = topicFuture(topic);
+        try {
+            return f.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            throw new IOException("Falha ao carregar segmentos do tópico " + topic, e.getCause());
+        }
+    }
+
+    private TopicState loadTopic(String topic) throws IOException {
+        Path tdir = baseDir.resolve(topic);
+        Files.createDirectories(tdir);
+        TopicState st = new TopicState(tdir);
+
+        List<Long> bases = segmentBaseOffsets(tdir);
+        if (bases.isEmpty()) bases = List.of(0L);
+
+        // Só o segmento ativo é conferido, e só depois do último checkpoint; os selados tiveram fsync no roll
+        for (int i = 0; i < bases.size(); i++) {
+            long base = bases.get(i);
+            boolean last = i == bases.size() - 1;
+            Segment seg = new Segment(tdir, base, config, last);
+            if (last) {
+                RecoveryPoint rp = RecoveryPoint.read(tdir);
+                boolean usable = rp != null && rp.baseOffset() == base;
+                long torn = usable ? seg.recover(rp.position(), rp.nextOffset()) : seg.recover(0, base);
+                // O que sobreviveu pode estar só no page cache; o checkpoint seguinte não pode contar com isso
+                seg.flush();
+                if (torn > 0) {
+                    LOG.warnf("Tópico %s: %d bytes inválidos no fim de %s descartados; próximo offset %d",
+                            topic, torn, seg.path().getFileName(), seg.nextOffset());
+                }
+            } else {
+                seg.setNextOffset(bases.get(i + 1));
+            }
+            st.segments.put(base, seg);
+        }
+        st.active = st.segments.lastEntry().getValue();
+        st.logStartOffset = st.segments.firstKey();
+        for (Segment seg : st.segments.values()) st.sizeBytes.addAndGet(seg.size());
+        st.tail = new TailCache(config.tailCacheBytes(), st.active.nextOffset());
+        markDurable(st);
+        return st;
+    }
+
+    private static List<Long> segmentBaseOffsets(Path tdir) throws IOException {
+        try (var s = Files.list(tdir)) {
+            return s.map(p -> p.getFileName().toString())
+                    .filter(n -> n.endsWith(Segment.LOG_SUFFIX))
+                    .map(n -> n.substring(0, n.length() - Segment.LOG_SUFFIX.length()))
+                    .filter(n -> !n.isEmpty() && n.chars().allMatch(Character::isDigit))
+                    .map(Long::parseLong)
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    public long append(String topic, byte[] key, byte[] value) throws IOException {
+        return await(appendAsync(topic, key, value));
+    }
+
+    // Offsets contíguos para o lote inteiro; devolve o primeiro
+    public long appendBatch(String topic, List<byte[]> keys, List<byte[]> values) throws IOException {
+        return await(appendBatchAsync(topic, keys, values));
+    }
+
+    private static long await(CompletableFuture<Long> f) throws IOException {
+        try {
+            return f.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            throw e;
+        }
+    }
+
+    // Completa quando o lote que contém o registro estiver durável, conforme ararajuba.log.flush.mode.
+    // Cada tópico tem seu próprio dono de escrita: quem conseguir o writeLock drena a fila e escreve
+    // os registros de todos que estão esperando; tópicos diferentes escrevem em paralelo.
+    public CompletableFuture<Long> appendAsync(String topic, byte[] key, byte[] value) {
+        return enqueue(topic, new PendingAppend(Collections.singletonList(key), Collections.singletonList(value)));
+    }
+
+    public CompletableFuture<Long> appendBatchAsync(String topic, List<byte[]> keys, List<byte[]> values) {
+        if (keys.size() != values.size()) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("keys e values com tamanhos diferentes"));
+        }
+        return enqueue(topic, new PendingAppend(keys, values));
+    }
+
+    private CompletableFuture<Long> enqueue(String topic, PendingAppend p) {
+        CompletableFuture<TopicState> f = topicFuture(topic);
+        if (f.isDone()) {
+            if (f.isCompletedExceptionally()) return f.thenApply(st -> -1L);
+            return enqueue(f.join(), p);
+        }
+        // Tópico ainda carregando: o append entra na fila quando a carga terminar, sem prender a thread
+        return f.thenCompose(st -> enqueue(st, p));
+    }
+
+    private CompletableFuture<Long> enqueue(TopicState st, PendingAppend p) {
+        if (closed) {
+            p.result.completeExceptionally(new IOException("CommitLog fechado"));
+            return p.result;
+        }
+        st.queue.add(p);
+        drainIfFree(st);
+        return p.result;
+    }
+
+    private void drainIfFree(TopicState st) {
+        // Rechecar a fila depois de soltar o lock evita registro esquecido por quem perdeu o tryLock
+        while (!st.queue.isEmpty() && st.writeLock.tryLock()) {
             try {
-                Path tdir = baseDir.resolve(t);
-                Files.createDirectories(tdir);
-                Path logFile = tdir.resolve("000000000000.log");
-
-                long startOffset = 0;
-                Segment seg = new Segment(logFile, startOffset);
-
-                TopicState st = new TopicState();
-                st.segment = seg;
-                st.baseOffset = 0;
-
-                try (FileChannel ch = FileChannel.open(logFile, CREATE, READ)) {
-                    ch.position(0);
-                    long filePos = 0;
-                    long off = 0;
-
-                    ByteBuffer lenBuf = ByteBuffer.allocate(4);
-                    while (true) {
-                        lenBuf.clear();
-                        int r = ch.read(lenBuf);
-                        if (r < 0) break;
-                        if (r < 4) break;
-                        lenBuf.flip();
-                        int total = lenBuf.getInt();
-
-                        ByteBuffer body = ByteBuffer.allocate(total - 4);
-                        int n = ch.read(body);
-                        if (n < body.capacity()) break;
-
-                        filePos += total;
-                        if (off % 100 == 0) {
-                            st.sparseIndex.put(off, filePos - total);
-                        }
-                        off++;
+                while (!st.queue.isEmpty()) drain(st);
+            } finally {
+                st.writeLock.unlock();
+            }
+        }
+    }
+
+    private void drain(TopicState st) {
+        List<PendingAppend> batch = new ArrayList<>();
+        int records = 0;
+        PendingAppend p;
+        while (records < MAX_WRITE_BATCH && (p = st.queue.poll()) != null) {
+            batch.add(p);
+            records += p.count();
+        }
+        if (batch.isEmpty()) return;
+
+        try {
+            write(st, batch);
+        } catch (IOException | RuntimeException e) {
+            for (PendingAppend failed : batch) failed.result.completeExceptionally(e);
+            return;
+        }
+
+        switch (config.flushMode()) {
+            case NONE -> complete(batch);
+            case BATCH -> {
+                st.unflushed.addAll(batch);
+                flush(st);
+            }
+            case RECORDS -> {
+                markDirty(st, batch);
+                if (st.unflushedRecords >= config.flushRecords()) flush(st);
+            }
+            case INTERVAL -> markDirty(st, batch);
+        }
+    }
+
+    // Todos os registros do drain vão para um único buffer do pool, codificados no lugar (v2) com o mesmo ts
+    private void write(TopicState st, List<PendingAppend> batch) throws IOException {
+        int records = 0;
+        long encoded = 0;
+        for (PendingAppend p : batch) {
+            records += p.count();
+            for (int r = 0; r < p.count(); r++) encoded += RecordCodec.encodedSize(p.keys.get(r), p.values.get(r));
+        }
+        if (encoded > Integer.MAX_VALUE - 8) throw new IOException("Escrita grande demais: " + encoded + " bytes");
+
+        long now = System.currentTimeMillis();
+        ByteBuffer buf = BufferPool.acquire((int) encoded);
+        try {
+            Segment seg = st.active;
+            int regionStart = 0;
+            int regionRecords = 0;
+            int fromEntry = 0;
+
+            for (int e = 0; e < batch.size(); e++) {
+                PendingAppend p = batch.get(e);
+                int unitStart = buf.position();
+                for (int r = 0; r < p.count(); r++) RecordCodec.encode(buf, now, p.keys.get(r), p.values.get(r));
+
+                // Um lote nunca é dividido entre segmentos
+                if (seg.shouldRoll(regionRecords, buf.position() - regionStart, now)) {
+                    assignOffsets(batch, fromEntry, e, append(st, seg, buf, regionStart, unitStart));
+                    seg = roll(st);
+                    regionStart = unitStart;
+                    regionRecords = 0;
+                    fromEntry = e;
+                }
+                regionRecords += p.count();
+            }
+            assignOffsets(batch, fromEntry, batch.size(), append(st, seg, buf, regionStart, buf.position()));
+            Metrics.APPEND_BYTES.add(buf.position());
+        } finally {
+            BufferPool.release(buf);
+        }
+        Metrics.APPEND_RECORDS.add(records);
+        st.appendRate.add(now, records);
+    }
+
+    // Com compressão, os registros vão para o segmento agrupados em lotes v1; o cache da cauda
+    // fica com os registros v2, para quem lê perto da cabeça não precisar descomprimir
+    private long append(TopicState st, Segment seg, ByteBuffer buf, int from, int to) throws IOException {
+        long sizeBefore = seg.size();
+        long first;
+        if (config.compression() == LogConfig.Compression.NONE || from == to) {
+            first = seg.append(buf, from, to);
+        } else {
+            // Cada lote fechado somado ao seguinte passa de MAX_COMPRESSED_BATCH, então cabem no máximo
+            // 2 * bytes / MAX_COMPRESSED_BATCH + 1 lotes, e nenhum é maior que seus registros mais o cabeçalho
+            int bytes = to - from;
+            ByteBuffer batches = BufferPool.acquire(bytes + RecordCodec.BATCH_HEADER_SIZE * (2 * (bytes / MAX_COMPRESSED_BATCH) + 2));
+            try {
+                int start = from;
+                int raw = 0;
+                int n = 0;
+                for (int p = from; p < to; ) {
+                    int len = buf.getInt(p);
+                    if (p > start && raw + len > MAX_COMPRESSED_BATCH) {
+                        RecordCodec.encodeBatch(buf, start, p, n, config.compression(), batches);
+                        start = p;
+                        raw = 0;
+                        n = 0;
                     }
-                    seg.setNextOffset(off);
-                } catch (IOException ex) {
-                    throw new RuntimeException("Falha ao reconstruir índice do tópico " + t, ex);
+                    raw += len;
+                    n++;
+                    p += len;
                 }
+                RecordCodec.encodeBatch(buf, start, to, n, config.compression(), batches);
+                first = seg.append(batches, 0, batches.position());
+            } finally {
+                BufferPool.release(batches);
+            }
+        }
+        st.sizeBytes.addAndGet(seg.size() - sizeBefore);
+        st.tail.append(first, buf, from, to);
+        return first;
+    }
 
-                return st;
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+    private static void assignOffsets(List<PendingAppend> batch, int from, int to, long firstOffset) {
+        long off = firstOffset;
+        for (int i = from; i < to; i++) {
+            batch.get(i).offset = off;
+            off += batch.get(i).count();
+        }
+    }
+
+    private void markDirty(TopicState st, List<PendingAppend> batch) {
+        if (st.unflushed.isEmpty()) {
+            st.lastFlush = System.currentTimeMillis();
+            dirty.add(st);
+        }
+        st.unflushed.addAll(batch);
+        for (PendingAppend p : batch) st.unflushedRecords += p.count();
+    }
+
+    private void flushDue() {
+        long now = System.currentTimeMillis();
+        for (TopicState st : dirty) {
+            if (now - st.lastFlush < config.flushIntervalMs()) continue;
+            // Se alguém está escrevendo no tópico, o próximo ciclo pega
+            if (!st.writeLock.tryLock()) continue;
+            try {
+                flush(st);
+            } finally {
+                st.writeLock.unlock();
             }
-        });
+            // Quem enfileirou enquanto o flusher segurava o lock perdeu o tryLock e conta com esta rechecagem
+            drainIfFree(st);
+        }
     }
 
-    public synchronized long append(String topic, byte[] key, byte[] value) throws IOException {
-        TopicState st = ensureTopic(topic);
-        long off = st.segment.append(key, value);
+    private void flush(TopicState st) {
+        if (st.unflushed.isEmpty()) return;
+        List<PendingAppend> done = List.copyOf(st.unflushed);
+        st.unflushed.clear();
+        st.unflushedRecords = 0;
+        dirty.remove(st);
+        st.lastFlush = System.currentTimeMillis();
+
+        try {
+            st.active.flush();
+        } catch (IOException e) {
+            for (PendingAppend p : done) p.result.completeExceptionally(e);
+            return;
+        }
+        markDurable(st);
+        complete(done);
+    }
 
-        FileChannel ch = st.segment.channel();
-        long filePos = ch.position();
+    // Chamado com writeLock (ou durante a carga), logo depois de um fsync do segmento ativo
+    private static void markDurable(TopicState st) {
+        Segment seg = st.active;
+        st.durable = new RecoveryPoint(seg.baseOffset(), seg.size(), seg.nextOffset());
+    }
 
-        if (off % 100 == 0) {
-            st.sparseIndex.put(off, filePos - (long) getLastRecordSize(st.segment));
+    private void checkpointAll() {
+        for (TopicState st : loaded()) {
+            try {
+                checkpoint(st);
+            } catch (IOException e) {
+                LOG.warnf(e, "Falha ao gravar recovery-point em %s", st.dir);
+            }
         }
-        return off;
     }
 
-    private int getLastRecordSize(Segment seg) throws IOException {
-        FileChannel ch = seg.channel();
-        long end = ch.position();
-        if (end < 4) return 0;
+    private static void checkpoint(TopicState st) throws IOException {
+        RecoveryPoint rp = st.durable;
+        if (rp == null || rp.equals(st.checkpointed)) return;
+        rp.write(st.dir);
+        st.checkpointed = rp;
+    }
 
-        long pos = end - 4;
-        ByteBuffer lenBuf = ByteBuffer.allocate(4);
-        ch.position(pos);
-        int r = ch.read(lenBuf);
-        if (r < 4) {
-            ch.position(end);
-            return 0;
+    private static void complete(List<PendingAppend> batch) {
+        long now = System.nanoTime();
+        for (PendingAppend p : batch) {
+            Metrics.APPEND_LATENCY.record(now - p.enqueued);
+            p.result.complete(p.offset);
         }
-        lenBuf.flip();
-        int total = lenBuf.getInt();
+    }
 
-        ch.position(end);
-        return total;
+    private Segment roll(TopicState st) throws IOException {
+        Segment old = st.active;
+        long base = old.nextOffset();
+        old.seal();
+
+        Segment seg = new Segment(st.dir, base, config, true);
+        st.segments.put(base, seg);
+        st.active = seg;
+        // O selado já teve fsync e o novo ainda está vazio
+        markDurable(st);
+        return seg;
     }
 
     public Optional<MessageRecord> read(String topic, long offset) throws IOException {
         TopicState st = ensureTopic(topic);
-        Path file = st.segment.path();
+        if (offset >= highWatermark(st)) return Optional.empty();
+        Map.Entry<Long, Segment> e = st.segments.floorEntry(offset);
+        if (e == null) return Optional.empty();
+        return e.getValue().read(offset);
+    }
 
-        try (FileChannel ch = FileChannel.open(file, READ)) {
-            Map.Entry<Long, Long> floor = st.sparseIndex.floorEntry(offset);
-            long startPos = (floor != null) ? floor.getValue() : 0L;
-            long currentOff = (floor != null) ? floor.getKey() : 0L;
+    // Lote contíguo a partir de fromOffset em uma única passada: um lookup e leitura sequencial,
+    // atravessando a fronteira entre segmentos quando necessário. Perto da cabeça sai do cache da cauda;
+    // o que o cache ainda não tem (escrita em andamento) completa pelo segmento. Nada passa da marca d'água.
+    public List<MessageRecord> readRange(String topic, long fromOffset, int maxRecords, int maxBytes) throws IOException {
+        List<MessageRecord> out = new ArrayList<>(Math.min(maxRecords, 1024));
+        readRange(topic, fromOffset, maxRecords, maxBytes, r -> out.add(r.toRecord()));
+        return out;
+    }
 
-            ch.position(startPos);
-            ByteBuffer lenBuf = ByteBuffer.allocate(4);
+    // A mesma leitura sem cópia: cada registro passa pelo visitor como RecordView, que só vale durante a chamada.
+    // Devolve quantos registros foram entregues.
+    public int readRange(String topic, long fromOffset, int maxRecords, int maxBytes, RecordView.Visitor visitor) throws IOException {
+        long started = System.nanoTime();
+        try {
+            RecordSink sink = new RecordSink(maxRecords, maxBytes, visitor);
+            readRange(ensureTopic(topic), fromOffset, sink);
+            return sink.count();
+        } finally {
+            Metrics.READ_LATENCY.recordSince(started);
+        }
+    }
 
-            while (true) {
-                lenBuf.clear();
-                int r = ch.read(lenBuf);
-                if (r < 0) return Optional.empty();   // EOF
-                if (r < 4) return Optional.empty();   // registro incompleto
+    private void readRange(TopicState st, long fromOffset, RecordSink sink) throws IOException {
+        long end = highWatermark(st);
+        if (fromOffset >= end) return;
+        sink.until(end);
+        long next = fromOffset;
+        if (st.tail.read(next, sink)) {
+            if (sink.full()) return;
+            if (sink.count() > 0) next = sink.next();
+        }
 
-                lenBuf.flip();
-                int total = lenBuf.getInt();
+        Map.Entry<Long, Segment> e = st.segments.floorEntry(next);
 
-                ByteBuffer recBuf = ByteBuffer.allocate(total - 4);
-                int read = ch.read(recBuf);
-                if (read < recBuf.capacity()) return Optional.empty(); // truncado
-                recBuf.flip();
+        while (e != null && !sink.full()) {
+            Segment seg = e.getValue();
+            seg.read(next, sink);
 
-                ByteBuffer full = ByteBuffer.allocate(total);
-                full.putInt(total);
-                full.put(recBuf);
-                full.flip();
+            if (sink.next() > next) next = sink.next();
+            if (next < seg.nextOffset()) break;
+            e = st.segments.higherEntry(e.getKey());
+        }
+    }
+
+    // Primeiro offset com ts >= ts; se nenhum registro é tão novo, o fim do log (só chega o que vier depois).
+    // Segmentos inteiros são pulados pelo maior ts de cada um; dentro do escolhido, busca no índice de tempo.
+    public long offsetForTimestamp(String topic, long ts) throws IOException {
+        TopicState st = ensureTopic(topic);
+        for (Segment seg : st.segments.values()) {
+            // Segmento sem índice de tempo (gravado antes dele): a data do arquivo é a da última escrita,
+            // com folga para a granularidade do relógio do sistema de arquivos
+            long max = seg.maxTimestamp() >= 0 ? seg.maxTimestamp() : seg.lastModified() + MTIME_SLACK_MS;
+            if (max < ts) continue;
+            long off = seg.offsetForTimestamp(ts);
+            if (off >= 0) return Math.min(off, highWatermark(st));
+        }
+        return highWatermark(st);
+    }
 
-                MessageRecord rec = RecordCodec.decode(currentOff, full);
+    public long logStartOffset(String topic) throws IOException {
+        TopicState st = ensureTopic(topic);
+        return st.logStartOffset;
+    }
 
-                if (currentOff == offset) {
-                    return Optional.of(rec);
-                }
-                currentOff++;
+    LogConfig config() {
+        return config;
+    }
+
+    // Remove do mapa os segmentos selados mais antigos que violam a retenção; o ativo nunca entra,
+    // então append segue sem lock. Os arquivos só são apagados depois pelo LogCleaner.
+    List<Segment> removeExpiredSegments(long now) throws IOException {
+        List<Segment> removed = new ArrayList<>();
+        // Tópicos ainda carregando ficam para a próxima rodada
+        for (TopicState st : loaded()) {
+            Segment active = st.active;
+
+            long total = 0;
+            for (Segment seg : st.segments.values()) total += seg.size();
+
+            for (Segment seg : st.segments.headMap(active.baseOffset()).values()) {
+                boolean bySize = config.retentionBytes() >= 0 && total > config.retentionBytes();
+                boolean byTime = config.retentionMs() >= 0 && now - seg.lastModified() > config.retentionMs();
+                if (!bySize && !byTime) break;
+
+                st.segments.remove(seg.baseOffset());
+                st.logStartOffset = st.segments.firstKey();
+                st.sizeBytes.addAndGet(-seg.size());
+                total -= seg.size();
+                removed.add(seg);
             }
         }
+        return removed;
     }
 
+    // Fim do log visível para leitores: a marca d'água, não o que já foi escrito
     public long nextOffset(String topic) throws IOException {
         TopicState st = ensureTopic(topic);
-        return st.segment.nextOffset();
+        return highWatermark(st);
+    }
+
+    // Fora do modo none, só o que já teve fsync: um registro ainda no page cache pode sumir no truncamento da
+    // recuperação e o offset dele ir para outra mensagem, depois de um consumidor já ter lido e confirmado.
+    // Os appends só completam depois do fsync, então o highWater do Dispatcher também nunca passa daqui.
+    private long highWatermark(TopicState st) {
+        return config.flushMode() == LogConfig.FlushMode.NONE ? st.active.nextOffset() : st.durable.nextOffset();
+    }
+
+    // Tópicos conhecidos (carregados ou carregando), direto do mapa; o disco só é listado na partida
+    public List<String> topicNames() {
+        List<String> names = new ArrayList<>(topics.keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+    // Um LogStats por tópico já carregado, ordenado por nome; só lê contadores em memória
+    public List<LogStats> stats() {
+        long now = System.currentTimeMillis();
+        List<LogStats> out = new ArrayList<>(topics.size());
+        for (TopicState st : loaded()) {
+            out.add(new LogStats(st.dir.getFileName().toString(), st.logStartOffset, highWatermark(st),
+                    st.sizeBytes.get(), st.appendRate.perSecond(now)));
+        }
+        out.sort(Comparator.comparing(LogStats::topic));
+        return out;
     }
 
     public List<String> listTopics() throws IOException {
@@ -0,0 +1,57 @@
+package br.iff.edu.ararajuba.log;
+
+import io.quarkus.runtime.StartupEvent;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@ApplicationScoped
+public class LogCleaner {
+
+    private static final Logger LOG = Logger.getLogger(LogCleaner.class);
+
+    @Inject
+    CommitLog log;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ararajuba-log-cleaner");
+        t.setDaemon(true);
+        return t;
+    });
+
+    void onStart(@Observes StartupEvent ev) {
+        long interval = log.config().retentionCheckMs();
+        scheduler.scheduleWithFixedDelay(this::cleanup, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    void cleanup() {
+        try {
+            for (Segment seg : log.removeExpiredSegments(System.currentTimeMillis())) {
+                // Leitores que já pegaram o segmento têm um tempo para terminar antes do arquivo sumir
+                scheduler.schedule(() -> deleteQuiet(seg), log.config().fileDeleteDelayMs(), TimeUnit.MILLISECONDS);
+            }
+        } catch (Exception e) {
+            LOG.warn("Falha ao aplicar retenção", e);
+        }
+    }
+
+    private void deleteQuiet(Segment seg) {
+        try {
+            seg.delete();
+        } catch (IOException e) {
+            LOG.warn("Falha ao apagar segmento " + seg.path(), e);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,41 @@
+package br.iff.edu.ararajuba.log;
+
+import br.iff.edu.ararajuba.util.Settings;
+
+record LogConfig(long segmentBytes, long segmentMs, int maxIndexBytes, int indexIntervalBytes,
+                 long retentionMs, long retentionBytes, long retentionCheckMs, long fileDeleteDelayMs,
+                 FlushMode flushMode, long flushIntervalMs, int flushRecords, long tailCacheBytes,
+                 long recoveryCheckpointMs, int recoveryThreads, Compression compression) {
+
+    // NONE: confirma após write (page cache); BATCH: fsync por lote escrito;
+    // INTERVAL: fsync a cada flush.interval.ms; RECORDS: fsync a cada flush.records, no máximo flush.interval.ms
+    enum FlushMode { NONE, BATCH, INTERVAL, RECORDS }
+
+    // Codec dos lotes v1; o ordinal é o que vai nos bits de atributos, então só se acrescenta no fim.
+    // NONE grava no formato v0, um registro por entrada.
+    enum Compression { NONE, DEFLATE }
+
+    static LogConfig fromSettings() {
+        // Posições no índice são int, então um segmento nunca passa de 2 GiB
+        long segmentBytes = Math.min(Integer.MAX_VALUE,
+                Settings.getLong("ararajuba.segment.bytes", 1073741824L));
+        return new LogConfig(
+                segmentBytes,
+                Settings.getLong("ararajuba.segment.ms", 604800000L),
+                Settings.getInt("ararajuba.segment.index.max-bytes", 10485760),
+                Settings.getInt("ararajuba.segment.index.interval-bytes", 4096),
+                // Valores negativos desligam a retenção correspondente
+                Settings.getLong("ararajuba.retention.ms", 3600000L),
+                Settings.getLong("ararajuba.retention.max-bytes", 1073741824L),
+                Settings.getLong("ararajuba.retention.check-interval.ms", 60000L),
+                Settings.getLong("ararajuba.retention.file-delete-delay.ms", 60000L),
+                FlushMode.valueOf(Settings.get("ararajuba.log.flush.mode", "batch").toUpperCase()),
+                Settings.getLong("ararajuba.log.flush.interval.ms", 50L),
+                Settings.getInt("ararajuba.log.flush.records", 1000),
+                // Por tópico; 0 desliga o cache da cauda
+                Settings.getLong("ararajuba.log.tail-cache.bytes", 8388608L),
+                Settings.getLong("ararajuba.log.recovery-checkpoint.interval.ms", 1000L),
+                Math.max(1, Settings.getInt("ararajuba.log.recovery.threads", Runtime.getRuntime().availableProcessors())),
+                Compression.valueOf(Settings.get("ararajuba.log.compression", "none").toUpperCase()));
+    }
+}
@@ -0,0 +1,5 @@
+package br.iff.edu.ararajuba.log;
+
+// Fotografia de um log físico tirada só da memória: nextOffset é o fim (próximo offset a ser gravado),
+// sizeBytes soma os arquivos .log dos segmentos e appendRate é em registros por segundo no último minuto
+public record LogStats(String topic, long logStartOffset, long nextOffset, long sizeBytes, double appendRate) {}
@@ -1,65 +1,306 @@
 package br.iff.edu.ararajuba.log;
 
+import br.iff.edu.ararajuba.log.LogConfig.Compression;
+
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
+// v0 (um registro por entrada): total (4), crc32 (4) do resto, ts (8), klen (4), vlen (4), key, value.
+// v1 (lote com offsets consecutivos): total (4), crc (4) do resto, magic (1) = 2, atributos (1; bits 0-2 = codec,
+//   bit 3 = crc32c em vez de crc32), count (4), primeiro ts (8), maior ts (8), tamanho descomprimido (4) e o payload:
+//   os registros (ts, klen, vlen, key, value) em sequência, comprimidos pelo codec dos atributos.
+// v2 (um registro por entrada, o que se grava hoje): total (4), crc32c (4) do resto, magic (1) = 3, ts (8), klen (4),
+//   vlen (4), key, value.
+// No v0 o byte na posição do magic é o byte alto do ts, sempre 0; por isso segmentos antigos continuam legíveis.
 public final class RecordCodec {
 
+    // total + crc + ts + klen + vlen
+    static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES;
+
+    static final byte MAGIC_BATCH = 2;
+    static final byte MAGIC_RECORD = 3;
+    private static final int MAGIC_POS = Integer.BYTES + Integer.BYTES;
+    private static final int ATTRIBUTES_POS = MAGIC_POS + 1;
+    private static final int COUNT_POS = ATTRIBUTES_POS + 1;
+    private static final int FIRST_TS_POS = COUNT_POS + Integer.BYTES;
+    private static final int MAX_TS_POS = FIRST_TS_POS + Long.BYTES;
+    private static final int RAW_SIZE_POS = MAX_TS_POS + Long.BYTES;
+    static final int BATCH_HEADER_SIZE = RAW_SIZE_POS + Integer.BYTES;
+    private static final int CODEC_MASK = 0x07;
+    private static final int ATTR_CRC32C = 0x08;
+
+    static final int RECORD_HEADER_SIZE = HEADER_SIZE + 1;
+
+    // Registro dentro do payload do lote: o v0 sem total e crc
+    private static final int INNER_HEADER = Long.BYTES + Integer.BYTES + Integer.BYTES;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    // Um por thread: CRC32/CRC32C só guardam o valor corrente e são zerados a cada uso
+    private static final ThreadLocal<CRC32> CRC32S = ThreadLocal.withInitial(CRC32::new);
+    private static final ThreadLocal<CRC32C> CRC32CS = ThreadLocal.withInitial(CRC32C::new);
+
+    // Deflater/Inflater têm memória nativa cara de criar; voltam para a fila depois de reset
+    private static final Queue<Deflater> DEFLATERS = new ConcurrentLinkedQueue<>();
+    private static final Queue<Inflater> INFLATERS = new ConcurrentLinkedQueue<>();
+
     private RecordCodec(){
 
     }
 
+    public static int sizeOf(byte[] key, byte[] value){
+        return HEADER_SIZE + (key == null ? 0 : key.length) + (value == null ? 0 : value.length);
+    }
+
+    // Tamanho da entrada v2 que encode grava
+    public static int encodedSize(byte[] key, byte[] value){
+        return sizeOf(key, value) + 1;
+    }
+
     public static ByteBuffer encode(long offset, byte[] key, byte[] value){
-        long ts = System.currentTimeMillis();
+        ByteBuffer buf = ByteBuffer.allocate(encodedSize(key, value)).order(ByteOrder.BIG_ENDIAN);
+        encode(buf, System.currentTimeMillis(), key, value);
+        return buf.flip();
+    }
+
+    // Grava uma entrada v2 na posição atual de dst (big-endian, com pelo menos encodedSize livres) e avança a posição.
+    // Nada é alocado: o CRC32C é calculado direto sobre a região gravada.
+    public static int encode(ByteBuffer dst, long ts, byte[] key, byte[] value){
+        byte[] k = key == null ? EMPTY : key;
+        byte[] v = value == null ? EMPTY : value;
+        int start = dst.position();
+        int total = RECORD_HEADER_SIZE + k.length + v.length;
+        if (total > dst.remaining()) throw new IllegalArgumentException("Buffer sem espaço para o registro: " + total + " bytes");
+
+        dst.putInt(start, total);
+        dst.put(start + MAGIC_POS, MAGIC_RECORD);
+        dst.putLong(start + MAGIC_POS + 1, ts);
+        dst.putInt(start + MAGIC_POS + 9, k.length);
+        dst.putInt(start + MAGIC_POS + 13, v.length);
+        dst.put(start + RECORD_HEADER_SIZE, k);
+        dst.put(start + RECORD_HEADER_SIZE + k.length, v);
+        dst.putInt(start + Integer.BYTES, checksum(CRC32CS.get(), dst, start + MAGIC_POS, total - MAGIC_POS));
+        dst.position(start + total);
+        return total;
+    }
+
+    // Junta as entradas v2 em [from, to) de src num lote v1 gravado na posição atual de dst, que precisa de
+    // BATCH_HEADER_SIZE + (to - from) livres. Se a compressão não reduz o tamanho, o lote vai sem codec.
+    static int encodeBatch(ByteBuffer src, int from, int to, int count, Compression compression, ByteBuffer dst){
+        int start = dst.position();
+        int payloadStart = start + BATCH_HEADER_SIZE;
+        int raw = 0;
+        long firstTs = firstTimestamp(src, from);
+        long maxTs = firstTs;
+        for (int p = from; p < to; p += src.getInt(p)) {
+            raw += src.getInt(p) - (innerStart(src, p) - p);
+            maxTs = Math.max(maxTs, firstTimestamp(src, p));
+        }
 
-        byte [] k = key == null ? new byte[0] : key;
-        byte [] v = value == null? new byte[0] : value;
+        int payloadLen = compression == Compression.DEFLATE ? deflate(src, from, to, dst, payloadStart, raw - 1) : -1;
+        Compression codec = payloadLen < 0 ? Compression.NONE : Compression.DEFLATE;
+        if (payloadLen < 0) {
+            int q = payloadStart;
+            for (int p = from; p < to; p += src.getInt(p)) {
+                int inner = innerStart(src, p);
+                int len = src.getInt(p) - (inner - p);
+                dst.put(q, src, inner, len);
+                q += len;
+            }
+            payloadLen = raw;
+        }
 
-        int payload = Long.BYTES + Integer.BYTES + Integer.BYTES + k.length + v.length;
-        int total = Integer.BYTES + Integer.BYTES + payload;
+        int total = BATCH_HEADER_SIZE + payloadLen;
+        dst.putInt(start, total);
+        dst.put(start + MAGIC_POS, MAGIC_BATCH);
+        dst.put(start + ATTRIBUTES_POS, (byte) (codec.ordinal() | ATTR_CRC32C));
+        dst.putInt(start + COUNT_POS, count);
+        dst.putLong(start + FIRST_TS_POS, firstTs);
+        dst.putLong(start + MAX_TS_POS, maxTs);
+        dst.putInt(start + RAW_SIZE_POS, raw);
+        dst.putInt(start + Integer.BYTES, checksum(CRC32CS.get(), dst, start + MAGIC_POS, total - MAGIC_POS));
+        dst.position(start + total);
+        return total;
+    }
 
-        ByteBuffer buf = ByteBuffer.allocate(total).order(ByteOrder.BIG_ENDIAN);
-        buf.putInt(total);
+    // Comprime os registros de [from, to) direto para dst a partir de at, sem cabeçalho zlib (o CRC do lote já
+    // cobre o payload). -1 se o resultado passaria de limit bytes.
+    private static int deflate(ByteBuffer src, int from, int to, ByteBuffer dst, int at, int limit){
+        Deflater d = DEFLATERS.poll();
+        if (d == null) d = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            ByteBuffer in = src.duplicate();
+            ByteBuffer out = dst.duplicate().limit(at + limit).position(at);
+            for (int p = from; p < to; p += src.getInt(p)) {
+                in.limit(p + src.getInt(p)).position(innerStart(src, p));
+                d.setInput(in);
+                while (!d.needsInput()) {
+                    d.deflate(out);
+                    if (!out.hasRemaining()) return -1;
+                }
+            }
+            d.finish();
+            while (!d.finished()) {
+                d.deflate(out);
+                if (!out.hasRemaining() && !d.finished()) return -1;
+            }
+            return out.position() - at;
+        } finally {
+            d.reset();
+            DEFLATERS.offer(d);
+        }
+    }
 
-        int crcPos = buf.position();
+    // Onde começa o registro interno (ts, klen, vlen, key, value) de uma entrada v0 ou v2
+    private static int innerStart(ByteBuffer buf, int start){
+        return start + (buf.get(start + MAGIC_POS) == MAGIC_RECORD ? MAGIC_POS + 1 : MAGIC_POS);
+    }
 
-        buf.putInt(0);
-        buf.putLong(ts);
-        buf.putInt(k.length);
-        buf.putInt(v.length);
-        buf.put(k);
-        buf.put(v);
+    static boolean isBatch(ByteBuffer buf, int start){
+        return buf.get(start + MAGIC_POS) == MAGIC_BATCH;
+    }
 
-        CRC32 crc = new CRC32();
+    // Quantos offsets a entrada que começa em start ocupa
+    static int recordCount(ByteBuffer buf, int start){
+        return isBatch(buf, start) ? buf.getInt(start + COUNT_POS) : 1;
+    }
 
-        ByteBuffer view = buf.duplicate().order(ByteOrder.BIG_ENDIAN);
+    // Timestamp do primeiro registro da entrada; precisa só do cabeçalho
+    static long firstTimestamp(ByteBuffer buf, int start){
+        return isBatch(buf, start) ? buf.getLong(start + FIRST_TS_POS) : buf.getLong(innerStart(buf, start));
+    }
+
+    // Maior timestamp da entrada; precisa só do cabeçalho
+    static long maxTimestamp(ByteBuffer buf, int start){
+        return isBatch(buf, start) ? buf.getLong(start + MAX_TS_POS) : buf.getLong(innerStart(buf, start));
+    }
 
-        view.position(crcPos + Integer.BYTES);
-        byte[] data = new byte[payload];
-        view.get(data);
-        crc.update(data);
+    // Confere tamanhos e CRC da entrada (v0, v1 ou v2) que começa na posição atual de buf, sem mexer nela
+    static boolean verify(ByteBuffer buf){
+        int start = buf.position();
+        if (buf.remaining() < HEADER_SIZE) return false;
+        int total = buf.getInt(start);
+        if (total < HEADER_SIZE || total > buf.remaining()) return false;
+        byte magic = buf.get(start + MAGIC_POS);
+        boolean crc32c;
+        if (magic == MAGIC_BATCH) {
+            if (total < BATCH_HEADER_SIZE) return false;
+            int attributes = buf.get(start + ATTRIBUTES_POS);
+            int codec = attributes & CODEC_MASK;
+            if (codec >= Compression.values().length || buf.getInt(start + COUNT_POS) <= 0
+                    || buf.getInt(start + RAW_SIZE_POS) < 0) return false;
+            crc32c = (attributes & ATTR_CRC32C) != 0;
+        } else {
+            int h = magic == MAGIC_RECORD ? 1 : 0;
+            if (total < HEADER_SIZE + h) return false;
+            int klen = buf.getInt(start + 16 + h);
+            int vlen = buf.getInt(start + 20 + h);
+            if (klen < 0 || vlen < 0 || (long) HEADER_SIZE + h + klen + vlen != total) return false;
+            crc32c = h == 1;
+        }
 
-        buf.putInt(crcPos, (int) crc.getValue());
-        buf.flip();
+        Checksum crc = crc32c ? CRC32CS.get() : CRC32S.get();
+        return checksum(crc, buf, start + MAGIC_POS, total - MAGIC_POS) == buf.getInt(start + 4);
+    }
 
-        return buf;
+    // Checksum de [from, from + len) de buf. Usa position/limit de buf e os devolve como estavam; por isso
+    // só serve para buffers que a thread atual não compartilha enquanto calcula.
+    private static int checksum(Checksum crc, ByteBuffer buf, int from, int len){
+        int position = buf.position();
+        int limit = buf.limit();
+        try {
+            crc.reset();
+            buf.limit(from + len).position(from);
+            crc.update(buf);
+            return (int) crc.getValue();
+        } finally {
+            buf.limit(limit).position(position);
+        }
     }
+
+    // Entrada de um registro só (v0 ou v2) na posição atual de buf; avança a posição até o fim dela
     public static MessageRecord decode(long offset, ByteBuffer buf){
         buf.order(ByteOrder.BIG_ENDIAN);
+        int start = buf.position();
+        RecordView r = decode(offset, buf, start, new RecordView());
+        buf.position(start + buf.getInt(start));
+        return r.toRecord();
+    }
+
+    // Versão sem cópia da anterior: aponta into para a entrada em start, sem mexer em buf
+    public static RecordView decode(long offset, ByteBuffer buf, int start, RecordView into){
+        if (isBatch(buf, start)) throw new IllegalArgumentException("Entrada em " + start + " é um lote");
+        int inner = innerStart(buf, start);
+        return into.set(buf, offset, buf.getLong(inner), inner + INNER_HEADER, buf.getInt(inner + 8), buf.getInt(inner + 12));
+    }
 
-        int total = buf.getInt();
-        int crc = buf.getInt();
-        long ts = buf.getLong();
-        int klen = buf.getInt();
-        int vlen = buf.getInt();
+    // Entrega ao sink os registros com offset >= from da entrada (v0, v1 ou v2) que começa em start de buf e ocupa a
+    // partir de baseOffset. Key e value chegam como faixas de buf, ou de um buffer do pool com o lote descomprimido,
+    // que volta ao pool no fim. Devolve false se o sink recusou um registro (a leitura deve parar ali).
+    static boolean decode(long baseOffset, ByteBuffer buf, int start, long from, RecordSink sink){
+        if (!isBatch(buf, start)) {
+            if (baseOffset < from) return true;
+            int inner = innerStart(buf, start);
+            return sink.offer(buf, baseOffset, buf.getLong(inner), inner + INNER_HEADER, buf.getInt(inner + 8), buf.getInt(inner + 12));
+        }
 
-        byte [] k = new byte[klen];
-        byte [] v = new byte[vlen];
+        int count = buf.getInt(start + COUNT_POS);
+        int skip = (int) Math.max(0, from - baseOffset);
+        if (skip >= count) return true;
 
-        buf.get(k);
-        buf.get(v);
+        Compression codec = Compression.values()[buf.get(start + ATTRIBUTES_POS) & CODEC_MASK];
+        if (codec == Compression.NONE) return visit(baseOffset, buf, start + BATCH_HEADER_SIZE, count, skip, sink);
+
+        ByteBuffer plain = inflate(buf, start);
+        try {
+            return visit(baseOffset, plain, 0, count, skip, sink);
+        } finally {
+            BufferPool.release(plain);
+        }
+    }
+
+    private static boolean visit(long baseOffset, ByteBuffer payload, int p, int count, int skip, RecordSink sink){
+        for (int i = 0; i < count; i++) {
+            int klen = payload.getInt(p + 8);
+            int vlen = payload.getInt(p + 12);
+            if (i >= skip && !sink.offer(payload, baseOffset + i, payload.getLong(p), p + INNER_HEADER, klen, vlen)) return false;
+            p += INNER_HEADER + klen + vlen;
+        }
+        return true;
+    }
 
-        return new MessageRecord(offset, ts, k, v);
+    private static ByteBuffer inflate(ByteBuffer buf, int start){
+        int total = buf.getInt(start);
+        int raw = buf.getInt(start + RAW_SIZE_POS);
+        ByteBuffer plain = BufferPool.acquire(raw);
+        plain.limit(raw);
+        Inflater inf = INFLATERS.poll();
+        if (inf == null) inf = new Inflater(true);
+        try {
+            inf.setInput(buf.slice(start + BATCH_HEADER_SIZE, total - BATCH_HEADER_SIZE));
+            while (plain.hasRemaining() && !inf.finished()) {
+                int r = inf.inflate(plain);
+                if (r == 0 && (inf.needsInput() || inf.needsDictionary())) break;
+            }
+            if (plain.hasRemaining()) throw new IllegalStateException("Lote comprimido com tamanho diferente do cabeçalho");
+            return plain.flip();
+        } catch (DataFormatException e) {
+            BufferPool.release(plain);
+            throw new IllegalStateException("Lote comprimido inválido", e);
+        } catch (RuntimeException e) {
+            BufferPool.release(plain);
+            throw e;
+        } finally {
+            inf.reset();
+            INFLATERS.offer(inf);
+        }
     }
 }
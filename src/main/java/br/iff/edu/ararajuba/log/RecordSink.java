@@ -0,0 +1,72 @@
+package br.iff.edu.ararajuba.log;
+
+import java.nio.ByteBuffer;
+
+// Destino de uma leitura que atravessa cache da cauda e segmentos: aplica maxRecords e maxBytes
+// (tamanho v0 de cada registro) e entrega cada registro ao visitor no mesmo RecordView.
+// Sem nada entregue ainda, o primeiro registro passa mesmo que sozinho exceda maxBytes.
+// Registros a partir de end (a marca d'água do tópico) não são entregues.
+final class RecordSink {
+
+    private final int maxRecords;
+    private final int maxBytes;
+    private final RecordView.Visitor visitor;
+    private final RecordView view = new RecordView();
+
+    private int count;
+    private int bytes;
+    private long next = -1;
+    private long end = Long.MAX_VALUE;
+    private boolean stopped;
+
+    RecordSink(int maxRecords, int maxBytes, RecordView.Visitor visitor) {
+        this.maxRecords = maxRecords;
+        this.maxBytes = maxBytes;
+        this.visitor = visitor;
+    }
+
+    RecordSink until(long end) {
+        this.end = end;
+        return this;
+    }
+
+    boolean full() {
+        return stopped || count >= maxRecords || (count > 0 && bytes >= maxBytes);
+    }
+
+    int maxBytes() {
+        return maxBytes;
+    }
+
+    // Quantos registros ainda cabem e o primeiro offset que não é entregue
+    int remaining() {
+        return stopped ? 0 : maxRecords - count;
+    }
+
+    long end() {
+        return end;
+    }
+
+    // false quando o registro não cabe; nesse caso nada foi entregue e a leitura deve parar
+    boolean offer(ByteBuffer buf, long offset, long ts, int keyPos, int keyLength, int valueLength) {
+        int size = RecordCodec.HEADER_SIZE + keyLength + valueLength;
+        if (offset >= end || count >= maxRecords || (count > 0 && bytes + size > maxBytes)) {
+            stopped = true;
+            return false;
+        }
+        visitor.accept(view.set(buf, offset, ts, keyPos, keyLength, valueLength));
+        count++;
+        bytes += size;
+        next = offset + 1;
+        return true;
+    }
+
+    int count() {
+        return count;
+    }
+
+    // Offset seguinte ao último entregue; -1 se nada foi entregue
+    long next() {
+        return next;
+    }
+}
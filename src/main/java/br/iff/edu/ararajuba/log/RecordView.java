@@ -0,0 +1,89 @@
+package br.iff.edu.ararajuba.log;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Registro lido sem cópia: key e value são faixas do buffer de onde a entrada foi decodificada
+// (janela de leitura do segmento, página do cache da cauda ou lote descomprimido).
+// O mesmo objeto é reaproveitado para todos os registros de uma leitura e só vale dentro do Visitor;
+// quem precisa guardar o registro usa toRecord() ou copia os bytes.
+public final class RecordView {
+
+    @FunctionalInterface
+    public interface Visitor {
+        void accept(RecordView r);
+    }
+
+    private ByteBuffer buf;
+    private long offset;
+    private long ts;
+    private int keyPos;
+    private int keyLength;
+    private int valuePos;
+    private int valueLength;
+
+    RecordView set(ByteBuffer buf, long offset, long ts, int keyPos, int keyLength, int valueLength) {
+        this.buf = buf;
+        this.offset = offset;
+        this.ts = ts;
+        this.keyPos = keyPos;
+        this.keyLength = keyLength;
+        this.valuePos = keyPos + keyLength;
+        this.valueLength = valueLength;
+        return this;
+    }
+
+    public long offset() {return offset;}
+    public long ts() {return ts;}
+    public int keyLength() {return keyLength;}
+    public int valueLength() {return valueLength;}
+
+    // Tamanho do registro no formato v0, o mesmo que RecordCodec.sizeOf e os limites de bytes das leituras usam
+    public int size() {
+        return RecordCodec.HEADER_SIZE + keyLength + valueLength;
+    }
+
+    public ByteBuffer key() {
+        return buf.slice(keyPos, keyLength);
+    }
+
+    public ByteBuffer value() {
+        return buf.slice(valuePos, valueLength);
+    }
+
+    public void copyKeyTo(ByteBuffer dst) {
+        copy(dst, keyPos, keyLength);
+    }
+
+    public void copyValueTo(ByteBuffer dst) {
+        copy(dst, valuePos, valueLength);
+    }
+
+    private void copy(ByteBuffer dst, int pos, int len) {
+        dst.put(dst.position(), buf, pos, len);
+        dst.position(dst.position() + len);
+    }
+
+    public String keyString() {
+        return string(keyPos, keyLength);
+    }
+
+    public String valueString() {
+        return string(valuePos, valueLength);
+    }
+
+    public MessageRecord toRecord() {
+        return new MessageRecord(offset, ts, bytes(keyPos, keyLength), bytes(valuePos, valueLength));
+    }
+
+    private byte[] bytes(int pos, int len) {
+        byte[] b = new byte[len];
+        buf.get(pos, b);
+        return b;
+    }
+
+    private String string(int pos, int len) {
+        if (buf.hasArray()) return new String(buf.array(), buf.arrayOffset() + pos, len, StandardCharsets.UTF_8);
+        return new String(bytes(pos, len), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,48 @@
+package br.iff.edu.ararajuba.log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+// Até onde o segmento ativo já passou por fsync: na recuperação, só o que vem depois de position
+// precisa ter o CRC conferido. Arquivo pequeno por tópico, trocado com rename atômico.
+// Layout: baseOffset (8), position (8), nextOffset (8), crc32 dos 24 bytes anteriores (4).
+record RecoveryPoint(long baseOffset, long position, long nextOffset) {
+
+    static final String FILE_NAME = "recovery-point";
+    private static final int SIZE = Long.BYTES * 3 + Integer.BYTES;
+
+    // null se não existe ou está corrompido: nesse caso o segmento ativo é conferido por inteiro
+    static RecoveryPoint read(Path dir) throws IOException {
+        byte[] data;
+        try {
+            data = Files.readAllBytes(dir.resolve(FILE_NAME));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (data.length != SIZE) return null;
+
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, SIZE - Integer.BYTES);
+        if ((int) crc.getValue() != buf.getInt(SIZE - Integer.BYTES)) return null;
+        return new RecoveryPoint(buf.getLong(), buf.getLong(), buf.getLong());
+    }
+
+    // Sem fsync: se o arquivo se perder num crash, a recuperação só fica mais longa
+    void write(Path dir) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(SIZE);
+        buf.putLong(baseOffset).putLong(position).putLong(nextOffset);
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 0, SIZE - Integer.BYTES);
+        buf.putInt((int) crc.getValue());
+
+        Path tmp = dir.resolve(FILE_NAME + ".tmp");
+        Files.write(tmp, buf.array());
+        Files.move(tmp, dir.resolve(FILE_NAME), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -1,68 +1,508 @@
 package br.iff.edu.ararajuba.log;
 
+import br.iff.edu.ararajuba.metrics.Metrics;
+
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 import static java.nio.file.StandardOpenOption.*;
 
 public class Segment {
 
+    static final String LOG_SUFFIX = ".log";
+    static final String INDEX_SUFFIX = ".index";
+    static final String TIME_INDEX_SUFFIX = ".timeindex";
+
+    // Entrada do índice: offset relativo ao baseOffset (int) + posição no arquivo (int)
+    private static final int INDEX_ENTRY = 8;
+    // Entrada do índice de tempo: maior ts visto até aqui (long) + offset relativo da entrada do log (int).
+    // Todo registro até o fim daquela entrada tem ts <= o da entrada; os ts são estritamente crescentes.
+    private static final int TIME_INDEX_ENTRY = 12;
+
+    // Cobre o intervalo padrão do índice com folga, de modo que a busca costuma ser uma única leitura
+    private static final int READ_WINDOW = 16 * 1024;
+    private static final int MAX_READ_WINDOW = 1024 * 1024;
+
     private final Path file;
+    private final Path indexFile;
+    private final Path timeIndexFile;
+    private final long baseOffset;
     private final FileChannel ch;
+    private final LogConfig config;
+    private final long created;
+
+    private volatile MappedByteBuffer index;
+    private volatile int indexEntries;
+    private volatile MappedByteBuffer timeIndex;
+    private volatile int timeIndexEntries;
+    // Maior ts do segmento; -1 em segmento selado sem índice de tempo (gravado antes dele existir)
+    private volatile long maxTimestamp = -1;
+    private long lastEntryOffset;
+    private long bytesSinceTimeIndex;
     private volatile long nextOffset;
+    private volatile long size;
+    private long bytesSinceIndex;
 
-    Segment(Path file, long startOffset) throws IOException{
-        this.file = file;
+    Segment(Path dir, long baseOffset, LogConfig config, boolean active) throws IOException{
+        this.file = dir.resolve(fileName(baseOffset, LOG_SUFFIX));
+        this.indexFile = dir.resolve(fileName(baseOffset, INDEX_SUFFIX));
+        this.timeIndexFile = dir.resolve(fileName(baseOffset, TIME_INDEX_SUFFIX));
+        this.baseOffset = baseOffset;
+        this.config = config;
         this.ch = FileChannel.open(file, CREATE, READ, WRITE);
-        this.nextOffset = startOffset;
+        this.nextOffset = baseOffset;
+        this.lastEntryOffset = baseOffset;
+
+        this.size = ch.size();
+
+        try (FileChannel ich = FileChannel.open(indexFile, CREATE, READ, WRITE)) {
+            // Segmento ativo mapeia o índice já no tamanho máximo; os selados só o que foi gravado
+            this.index = active
+                    ? ich.map(FileChannel.MapMode.READ_WRITE, 0, config.maxIndexBytes())
+                    : ich.map(FileChannel.MapMode.READ_ONLY, 0, ich.size());
+        }
+        this.indexEntries = countValidEntries();
+        try (FileChannel tch = FileChannel.open(timeIndexFile, CREATE, READ, WRITE)) {
+            this.timeIndex = active
+                    ? tch.map(FileChannel.MapMode.READ_WRITE, 0, (long) config.maxIndexBytes() / INDEX_ENTRY * TIME_INDEX_ENTRY)
+                    : tch.map(FileChannel.MapMode.READ_ONLY, 0, tch.size());
+        }
+        this.timeIndexEntries = countValidTimeEntries();
+        if (timeIndexEntries > 0) this.maxTimestamp = timeIndexTs(timeIndexEntries - 1);
+        this.created = ch.size() > 0 ? firstTimestamp() : System.currentTimeMillis();
+    }
+
+    static String fileName(long baseOffset, String suffix){
+        return String.format("%012d", baseOffset) + suffix;
+    }
+
+    // Entradas válidas são estritamente crescentes; o resto do arquivo pré-alocado é zero
+    private int countValidEntries() throws IOException {
+        int max = index.capacity() / INDEX_ENTRY;
+        long size = ch.size();
+        int n = 0;
+        int prevRel = -1;
+        while (n < max) {
+            int rel = index.getInt(n * INDEX_ENTRY);
+            int pos = index.getInt(n * INDEX_ENTRY + Integer.BYTES);
+            if (rel <= prevRel || pos < 0 || pos >= size) break;
+            if (n > 0 && pos <= index.getInt((n - 1) * INDEX_ENTRY + Integer.BYTES)) break;
+            prevRel = rel;
+            n++;
+        }
+        return n;
+    }
+
+    private int countValidTimeEntries() {
+        int max = timeIndex.capacity() / TIME_INDEX_ENTRY;
+        int n = 0;
+        long prevTs = 0;
+        int prevRel = -1;
+        while (n < max) {
+            long ts = timeIndex.getLong(n * TIME_INDEX_ENTRY);
+            int rel = timeIndex.getInt(n * TIME_INDEX_ENTRY + Long.BYTES);
+            if (ts <= prevTs || rel < prevRel) break;
+            prevTs = ts;
+            prevRel = rel;
+            n++;
+        }
+        return n;
+    }
+
+    private long firstTimestamp() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RecordCodec.BATCH_HEADER_SIZE);
+        readFully(header, 0);
+        if (header.remaining() < RecordCodec.HEADER_SIZE) return System.currentTimeMillis();
+        if (RecordCodec.isBatch(header, 0) && header.remaining() < RecordCodec.BATCH_HEADER_SIZE) return System.currentTimeMillis();
+        return RecordCodec.firstTimestamp(header, 0);
+    }
+
+    // Reconstrói o estado do segmento ativo a partir de um ponto já confirmado em disco (fromPos/fromOffset;
+    // 0 e baseOffset sem checkpoint). Cada registro da cauda tem o CRC conferido; no primeiro inválido
+    // o arquivo é truncado ali e as entradas do índice que apontavam para depois são descartadas.
+    // Devolve quantos bytes foram cortados.
+    long recover(long fromPos, long fromOffset) throws IOException{
+        long end = ch.size();
+        if (fromPos > end) {
+            fromPos = 0;
+            fromOffset = baseOffset;
+        }
+
+        // Entradas do índice até fromPos continuam valendo; as demais são refeitas pela varredura
+        int keep = 0;
+        while (keep < indexEntries && indexPosition(keep) < fromPos) keep++;
+        clearIndex(keep);
+        bytesSinceIndex = fromPos - (keep > 0 ? indexPosition(keep - 1) : 0);
+
+        int keepTime = 0;
+        while (keepTime < timeIndexEntries && baseOffset + timeIndexRelative(keepTime) < fromOffset) keepTime++;
+        clearTimeIndex(keepTime);
+        maxTimestamp = -1;
+        if (keepTime > 0) {
+            // O que foi gravado entre a última entrada e fromPos pode ter ts maior que ela
+            int slot = lookup(baseOffset + timeIndexRelative(keepTime - 1));
+            long start = slot < 0 ? 0 : indexPosition(slot);
+            maxTimestamp = Math.max(timeIndexTs(keepTime - 1), maxTimestampBetween(start, fromPos));
+        }
+        bytesSinceTimeIndex = bytesSinceIndex;
+
+        long pos = fromPos;
+        long off = fromOffset;
+        ByteBuffer window = ByteBuffer.allocate((int) Math.min(MAX_READ_WINDOW, Math.max(end - pos, 4))).limit(0);
+        long windowStart = pos;
+
+        while (pos + 4 <= end) {
+            int rel = (int) (pos - windowStart);
+            if (rel + RecordCodec.HEADER_SIZE > window.limit()) {
+                fill(window, pos, end);
+                windowStart = pos;
+                rel = 0;
+            }
+            if (rel + 4 > window.limit()) break;
+            int total = window.getInt(rel);
+            if (total < RecordCodec.HEADER_SIZE || pos + total > end) break;
+
+            ByteBuffer rec;
+            if (rel + total <= window.limit()) {
+                rec = window.slice(rel, total);
+            } else if (total <= window.capacity()) {
+                fill(window, pos, end);
+                windowStart = pos;
+                rec = window.slice(0, total);
+            } else {
+                rec = ByteBuffer.allocate(total);
+                readFully(rec, pos);
+            }
+            if (!RecordCodec.verify(rec)) break;
+
+            maybeIndex(off, pos);
+            maybeTimeIndex(off, RecordCodec.maxTimestamp(rec, 0));
+            bytesSinceIndex += total;
+            bytesSinceTimeIndex += total;
+            pos += total;
+            off += RecordCodec.recordCount(rec, 0);
+        }
+
+        long torn = end - pos;
+        if (torn > 0) {
+            ch.truncate(pos);
+            ch.force(false);
+        }
+        size = pos;
+        nextOffset = off;
+        return torn;
+    }
+
+    // Maior ts das entradas em [pos, end), lendo só os cabeçalhos
+    private long maxTimestampBetween(long pos, long end) throws IOException {
+        long max = -1;
+        ByteBuffer window = ByteBuffer.allocate(READ_WINDOW).limit(0);
+        long windowStart = pos;
+        while (pos < end) {
+            int rel = (int) (pos - windowStart);
+            if (rel + RecordCodec.BATCH_HEADER_SIZE > window.limit()) {
+                fill(window, pos, end);
+                windowStart = pos;
+                rel = 0;
+            }
+            if (rel + RecordCodec.HEADER_SIZE > window.limit()) break;
+            int total = window.getInt(rel);
+            if (total < RecordCodec.HEADER_SIZE) break;
+            max = Math.max(max, RecordCodec.maxTimestamp(window, rel));
+            pos += total;
+        }
+        return max;
+    }
+
+    private void clearTimeIndex(int keep) {
+        for (int i = keep; i < timeIndexEntries; i++) {
+            timeIndex.putLong(i * TIME_INDEX_ENTRY, 0L);
+            timeIndex.putInt(i * TIME_INDEX_ENTRY + Long.BYTES, 0);
+        }
+        timeIndexEntries = keep;
+    }
+
+    private void clearIndex(int keep) {
+        for (int i = keep; i < indexEntries; i++) {
+            index.putLong(i * INDEX_ENTRY, 0L);
+        }
+        indexEntries = keep;
+    }
+
+    // pendingRecords/pendingBytes: o que já está acumulado para a próxima escrita, incluindo o registro novo
+    boolean shouldRoll(int pendingRecords, long pendingBytes, long now){
+        if (nextOffset == baseOffset && pendingRecords == 0) return false;
+        if (size + pendingBytes > config.segmentBytes()) return true;
+        if (now - created >= config.segmentMs()) return true;
+        if ((indexEntries + pendingRecords + 1) * INDEX_ENTRY > index.capacity()) return true;
+        return nextOffset + pendingRecords - baseOffset >= Integer.MAX_VALUE;
+    }
+
+    // Escrita única das entradas já codificadas (registros v2 ou lotes v1) em [from, to) de entries, que
+    // volta com posição e limite de antes; devolve o offset do primeiro. Só a thread escritora chama.
+    long append(ByteBuffer entries, int from, int to) throws IOException{
+        long first = this.nextOffset;
+        if (from == to) return first;
+
+        long pos = size;
+        int position = entries.position();
+        int limit = entries.limit();
+        try {
+            entries.limit(to).position(from);
+            while (entries.hasRemaining()) ch.write(entries, pos + entries.position() - from);
+        } finally {
+            entries.limit(limit).position(position);
+        }
+
+        long off = first;
+        for (int p = from; p < to; ) {
+            int len = entries.getInt(p);
+            maybeIndex(off, pos);
+            maybeTimeIndex(off, RecordCodec.maxTimestamp(entries, p));
+            off += RecordCodec.recordCount(entries, p);
+            bytesSinceIndex += len;
+            bytesSinceTimeIndex += len;
+            pos += len;
+            p += len;
+        }
+
+        this.size = pos;
+        this.nextOffset = off;
+        return first;
+    }
+
+    void flush() throws IOException{
+        ch.force(false);
+    }
+
+    private void maybeIndex(long offset, long pos){
+        if (bytesSinceIndex < config.indexIntervalBytes()) return;
+        int n = indexEntries;
+        if ((n + 1) * INDEX_ENTRY > index.capacity()) return;
+        index.putInt(n * INDEX_ENTRY, (int) (offset - baseOffset));
+        index.putInt(n * INDEX_ENTRY + Integer.BYTES, (int) pos);
+        indexEntries = n + 1;
+        bytesSinceIndex = 0;
+    }
+
+    // Mesmo intervalo do índice de offsets, e só quando o maior ts avança
+    private void maybeTimeIndex(long entryOffset, long ts){
+        lastEntryOffset = entryOffset;
+        if (ts <= maxTimestamp) return;
+        maxTimestamp = ts;
+        if (bytesSinceTimeIndex < config.indexIntervalBytes() && timeIndexEntries > 0) return;
+        appendTimeEntry(ts, entryOffset);
+    }
+
+    private void appendTimeEntry(long ts, long entryOffset){
+        int n = timeIndexEntries;
+        if ((n + 1) * TIME_INDEX_ENTRY > timeIndex.capacity()) return;
+        if (n > 0 && ts <= timeIndexTs(n - 1)) return;
+        timeIndex.putLong(n * TIME_INDEX_ENTRY, ts);
+        timeIndex.putInt(n * TIME_INDEX_ENTRY + Long.BYTES, (int) (entryOffset - baseOffset));
+        timeIndexEntries = n + 1;
+        bytesSinceTimeIndex = 0;
+    }
+
+    private long timeIndexTs(int slot){
+        return timeIndex.getLong(slot * TIME_INDEX_ENTRY);
+    }
 
-        ch.position(ch.size());
+    private int timeIndexRelative(int slot){
+        return timeIndex.getInt(slot * TIME_INDEX_ENTRY + Long.BYTES);
     }
 
-    long append(byte[] key, byte[] value) throws IOException{
-        long off = this.nextOffset++;
-        ByteBuffer rec = RecordCodec.encode(off, key, value);
-        while(rec.hasRemaining()) ch.write(rec);
+    long maxTimestamp(){
+        return maxTimestamp;
+    }
 
-        return off;
+    // Primeiro offset com ts >= alvo, ou -1 se o segmento não tem nenhum. Busca binária no índice de tempo
+    // pela última entrada com ts < alvo (tudo até ela é mais antigo) e varredura a partir dali.
+    long offsetForTimestamp(long ts) throws IOException{
+        int lo = 0;
+        int hi = timeIndexEntries - 1;
+        int found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (timeIndexTs(mid) < ts) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+
+        long from = found < 0 ? baseOffset : baseOffset + timeIndexRelative(found);
+        long[] hit = {-1};
+        while (from < nextOffset && hit[0] < 0) {
+            RecordSink sink = new RecordSink(512, MAX_READ_WINDOW, r -> {
+                if (hit[0] < 0 && r.ts() >= ts) hit[0] = r.offset();
+            });
+            read(from, sink);
+            if (sink.count() == 0) break;
+            from = sink.next();
+        }
+        return hit[0];
     }
 
-    Optional<MessageRecord> readAtOffset(long offset) throws IOException{
+    private int indexRelative(int slot){
+        return index.getInt(slot * INDEX_ENTRY);
+    }
 
-        long pos = 0;
+    private long indexPosition(int slot){
+        return index.getInt(slot * INDEX_ENTRY + Integer.BYTES);
+    }
 
-        ch.position(0);
+    // Busca binária pela maior entrada com offset <= alvo; -1 se o alvo vem antes da primeira entrada
+    private int lookup(long offset){
+        int lo = 0;
+        int hi = indexEntries - 1;
+        int found = -1;
+        long rel = offset - baseOffset;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (indexRelative(mid) <= rel) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
 
-        ByteBuffer lenBuf = ByteBuffer.allocate(4);
+    Optional<MessageRecord> read(long offset) throws IOException{
+        List<MessageRecord> out = new ArrayList<>(1);
+        read(offset, new RecordSink(1, 1, r -> out.add(r.toRecord())));
+        return out.isEmpty() ? Optional.empty() : Optional.of(out.get(0));
+    }
 
-        while(true){
-            lenBuf.clear();
-            int r = ch.read(lenBuf);
+    // Leitura posicional no canal compartilhado: não mexe na posição do escritor nem abre arquivo.
+    // Um único lookup no índice e depois leitura sequencial numa janela do BufferPool, decodificando direto dela:
+    // os registros chegam ao sink como faixas da janela, sem cópia. Limites de registros e bytes são os do sink.
+    void read(long from, RecordSink sink) throws IOException{
+        if (from < baseOffset || from >= nextOffset || sink.full()) return;
+        long end = size;
 
-            if(r < 0) return Optional.empty();
-            if (r < 4) return Optional.empty();
+        int slot = lookup(from);
+        long currentOff = slot < 0 ? baseOffset : baseOffset + indexRelative(slot);
+        long pos = slot < 0 ? 0L : indexPosition(slot);
 
-            lenBuf.flip();
+        int capacity = (int) Math.min(Math.max(READ_WINDOW, Math.min(sink.maxBytes(), MAX_READ_WINDOW)), end - pos);
+        ByteBuffer window = BufferPool.acquire(capacity);
+        try {
+            window.limit(0);
+            long windowStart = pos;
+            long scanned = 0;
+            while (!sink.full() && pos + 4 <= end) {
+                int rel = (int) (pos - windowStart);
+                if (rel + 4 > window.limit()) {
+                    fill(window, pos, end);
+                    windowStart = pos;
+                    rel = 0;
+                }
 
-            int total = lenBuf.getInt();
+                int total = window.getInt(rel);
+                if (total < RecordCodec.HEADER_SIZE || pos + total > end) break;
+                if (rel + RecordCodec.BATCH_HEADER_SIZE > window.limit() && total <= window.capacity()) {
+                    fill(window, pos, end);
+                    windowStart = pos;
+                    rel = 0;
+                }
+                // Cabeçalho fora da janela só acontece com entrada maior que ela, que é lida inteira abaixo
+                int span = rel + RecordCodec.BATCH_HEADER_SIZE <= window.limit() ? RecordCodec.recordCount(window, rel) : -1;
 
-            ByteBuffer recBuf = ByteBuffer.allocate(total -4);
-            int read = ch.read(recBuf);
-            if (read < recBuf.capacity()) return Optional.empty();
+                if (span < 0 || currentOff + span > from) {
+                    ByteBuffer src = window;
+                    int at = rel;
+                    ByteBuffer large = null;
+                    if (rel + total > window.limit()) {
+                        if (total <= window.capacity()) {
+                            fill(window, pos, end);
+                            windowStart = pos;
+                            at = 0;
+                        } else {
+                            large = BufferPool.acquire(total);
+                            large.limit(total);
+                            readFully(large, pos);
+                            src = large;
+                            at = 0;
+                        }
+                    }
+                    try {
+                        if (span < 0) span = RecordCodec.recordCount(src, at);
+                        // Parou no meio da entrada por maxRecords ou maxBytes
+                        if (!RecordCodec.decode(currentOff, src, at, from, sink)) break;
+                    } finally {
+                        BufferPool.release(large);
+                    }
+                }
+                pos += total;
+                currentOff += span;
+                scanned += span;
+            }
+            Metrics.READ_SCANNED.record(scanned);
+        } finally {
+            BufferPool.release(window);
+        }
+    }
 
-            recBuf.flip();
+    private void fill(ByteBuffer window, long pos, long end) throws IOException{
+        window.clear().limit((int) Math.min(window.capacity(), end - pos));
+        readFully(window, pos);
+    }
 
-            MessageRecord rec = RecordCodec.decode(-1, ByteBuffer.allocate(total).putInt(total).put(recBuf).flip());
+    private void readFully(ByteBuffer buf, long pos) throws IOException{
+        int start = buf.position();
+        while (buf.hasRemaining()) {
+            int r = ch.read(buf, pos + buf.position() - start);
+            if (r < 0) break;
+        }
+        buf.flip();
+        buf.position(start);
+    }
 
-            return Optional.of(rec);
+    // Segmento deixou de ser ativo: descarta a parte não usada do índice
+    void seal() throws IOException{
+        ch.force(false);
+        index.force();
+        try (FileChannel ich = FileChannel.open(indexFile, READ, WRITE)) {
+            ich.truncate((long) indexEntries * INDEX_ENTRY);
+            index = ich.map(FileChannel.MapMode.READ_ONLY, 0, ich.size());
+        }
+        // A última entrada leva o maior ts do segmento, que é o que a busca por tempo lê dos selados
+        if (maxTimestamp > 0 && nextOffset > baseOffset) appendTimeEntry(maxTimestamp, lastEntryOffset);
+        timeIndex.force();
+        try (FileChannel tch = FileChannel.open(timeIndexFile, READ, WRITE)) {
+            tch.truncate((long) timeIndexEntries * TIME_INDEX_ENTRY);
+            timeIndex = tch.map(FileChannel.MapMode.READ_ONLY, 0, tch.size());
         }
     }
+
     FileChannel channel() {return this.ch;}
     Path path() {return this.file;}
+    long baseOffset() {return this.baseOffset;}
     long nextOffset() {return this.nextOffset;}
     void setNextOffset(long off) {nextOffset = off;}
-    void close() throws IOException {ch.close();}
+    long size() {return this.size;}
+    long lastModified() throws IOException {return Files.getLastModifiedTime(file).toMillis();}
+    void close() throws IOException {
+        if (!index.isReadOnly()) index.force();
+        if (!timeIndex.isReadOnly()) timeIndex.force();
+        ch.close();
+    }
+
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(indexFile);
+        Files.deleteIfExists(timeIndexFile);
+    }
 }
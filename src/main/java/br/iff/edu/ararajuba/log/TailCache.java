@@ -0,0 +1,162 @@
+package br.iff.edu.ararajuba.log;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Cauda recente do tópico em memória, com os mesmos bytes codificados que foram para o segmento.
+// Consumidores perto da cabeça leem daqui sem tocar no arquivo. Limitada por bytes: os mais antigos saem primeiro.
+// As entradas são copiadas para um anel de bytes de heap que cresce por dobra até maxBytes e depois é só reaproveitado.
+final class TailCache {
+
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    private final long maxBytes;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Posições são virtuais (só crescem); a física é posição % capacidade. Uma entrada nunca dá a volta
+    // no fim do anel: se não cabe no que resta, começa na volta seguinte.
+    private ByteBuffer ring;
+    private long[] positions = new long[256];
+    private int head;
+    private int count;
+    private long first;
+    private long writePos;
+
+    TailCache(long maxBytes, long nextOffset) {
+        this.maxBytes = Math.min(maxBytes, Integer.MAX_VALUE - 8);
+        this.first = nextOffset;
+    }
+
+    // Só o dono da escrita chama, logo depois de gravar no segmento, com as entradas v2 em [from, to) de src
+    // (um offset cada). Se os offsets não continuam o que já está em memória (falha no meio de uma escrita), recomeça vazio.
+    void append(long firstOffset, ByteBuffer src, int from, int to) {
+        if (maxBytes <= 0 || from == to) return;
+        lock.writeLock().lock();
+        try {
+            if (firstOffset != first + count) reset(firstOffset);
+
+            long off = firstOffset;
+            for (int p = from; p < to; off++) {
+                int len = src.getInt(p);
+                if (len > maxBytes) {
+                    reset(off + 1);
+                    p += len;
+                    continue;
+                }
+                long at = reserve(len);
+                ring.put((int) (at % ring.capacity()), src, p, len);
+                if (count == positions.length) grow();
+                positions[(head + count) & (positions.length - 1)] = at;
+                count++;
+                writePos = at + len;
+                p += len;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // false se from não está em memória; senão entrega ao sink a partir de from até o sink encher ou a cauda acabar.
+    // Sob o lock só se copiam as entradas que o sink pode aceitar para um buffer do pool; decodificar e chamar
+    // o visitor (que monta frames e JSON) fica fora dele, para não segurar o append que espera o writeLock.
+    boolean read(long from, RecordSink sink) {
+        ByteBuffer copy;
+        int n;
+        lock.readLock().lock();
+        try {
+            if (from < first || from >= first + count) return false;
+
+            long last = Math.min(first + count, Math.min(sink.end(), from + sink.remaining()));
+            // Mesma conta de bytes do sink (tamanho v0, que é o v2 menos o magic); o primeiro sempre entra
+            int bytes = 0;
+            n = 0;
+            while (from + n < last) {
+                int len = ring.getInt(physical(from + n));
+                if (n > 0 && (long) bytes - n + len - 1 > sink.maxBytes()) break;
+                bytes += len;
+                n++;
+            }
+            if (n == 0) return true;
+
+            copy = BufferPool.acquire(bytes);
+            for (int i = 0; i < n; i++) {
+                int at = physical(from + i);
+                int len = ring.getInt(at);
+                copy.put(copy.position(), ring, at, len);
+                copy.position(copy.position() + len);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        try {
+            for (int i = 0, p = 0; i < n && !sink.full(); i++) {
+                if (!RecordCodec.decode(from + i, copy, p, from + i, sink)) break;
+                p += copy.getInt(p);
+            }
+        } finally {
+            BufferPool.release(copy);
+        }
+        return true;
+    }
+
+    private int physical(long offset) {
+        long at = positions[(int) ((head + (offset - first)) & (positions.length - 1))];
+        return (int) (at % ring.capacity());
+    }
+
+    // Posição para uma entrada de len bytes: o anel cresce até maxBytes e, depois disso, as mais antigas saem
+    private long reserve(int len) {
+        if (ring == null) ring = ByteBuffer.allocate((int) Math.min(maxBytes, Math.max(INITIAL_CAPACITY, len)));
+        long at = align(writePos, len);
+        if (count > 0 ? at + len - positions[head] > ring.capacity() : len > ring.capacity()) {
+            if (ring.capacity() < maxBytes) {
+                resize(len);
+                at = align(writePos, len);
+            }
+            while (count > 0 && at + len - positions[head] > ring.capacity()) evictFirst();
+        }
+        return at;
+    }
+
+    private long align(long pos, int len) {
+        long left = ring.capacity() - pos % ring.capacity();
+        return len > left ? pos + left : pos;
+    }
+
+    // Anel maior, com as entradas vivas copiadas em sequência a partir do início
+    private void resize(int len) {
+        long live = count > 0 ? writePos - positions[head] : 0;
+        ByteBuffer bigger = ByteBuffer.allocate((int) Math.min(maxBytes, Math.max((long) ring.capacity() << 1, live + len)));
+        long pos = 0;
+        for (int i = 0; i < count; i++) {
+            int slot = (head + i) & (positions.length - 1);
+            int at = (int) (positions[slot] % ring.capacity());
+            int n = ring.getInt(at);
+            bigger.put((int) pos, ring, at, n);
+            positions[slot] = pos;
+            pos += n;
+        }
+        ring = bigger;
+        writePos = pos;
+    }
+
+    private void evictFirst() {
+        head = (head + 1) & (positions.length - 1);
+        count--;
+        first++;
+    }
+
+    private void reset(long nextOffset) {
+        head = 0;
+        count = 0;
+        first = nextOffset;
+    }
+
+    private void grow() {
+        long[] bigger = new long[positions.length << 1];
+        for (int i = 0; i < count; i++) bigger[i] = positions[(head + i) & (positions.length - 1)];
+        positions = bigger;
+        head = 0;
+    }
+}
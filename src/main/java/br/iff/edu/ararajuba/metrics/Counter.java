@@ -0,0 +1,38 @@
+package br.iff.edu.ararajuba.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Contador monotônico; LongAdder já distribui as células entre threads concorrentes.
+// Também serve de gauge (add com valor negativo) quando criado com gauge=true.
+public final class Counter implements Metric {
+
+    private final String name;
+    private final String help;
+    private final boolean gauge;
+    private final LongAdder value = new LongAdder();
+
+    Counter(String name, String help, boolean gauge) {
+        this.name = name;
+        this.help = help;
+        this.gauge = gauge;
+    }
+
+    public void inc() {
+        value.increment();
+    }
+
+    public void add(long n) {
+        value.add(n);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+
+    @Override
+    public void writeTo(StringBuilder out) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(gauge ? " gauge\n" : " counter\n");
+        out.append(name).append(' ').append(value.sum()).append('\n');
+    }
+}
@@ -0,0 +1,115 @@
+package br.iff.edu.ararajuba.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Histograma log-linear no estilo HDR: cada potência de 2 é dividida em 8 faixas iguais (erro relativo <= 12,5%),
+// cobrindo todo o intervalo de long sem configuração. Contagens em faixas (stripes) escolhidas pela thread,
+// para gravadores concorrentes não disputarem a mesma linha de cache; a leitura soma tudo.
+// record é um incremento atômico e uma soma num LongAdder, sem alocação.
+public final class Histogram implements Metric {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BITS + 1) * SUB;
+    // Potência de 2 >= núcleos, até 16
+    private static final int STRIPES = Math.min(16, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    private final String name;
+    private final String help;
+    // Fator para a unidade exportada (ex.: 1e-9 para ns -> s)
+    private final double scale;
+    // Fronteiras exportadas (le): 2^minExp .. 2^maxExp na unidade gravada
+    private final int minExp;
+    private final int maxExp;
+
+    private final AtomicLongArray counts = new AtomicLongArray(STRIPES * BUCKETS);
+    private final LongAdder sum = new LongAdder();
+
+    Histogram(String name, String help, double scale, int minExp, int maxExp) {
+        this.name = name;
+        this.help = help;
+        this.scale = scale;
+        this.minExp = minExp;
+        this.maxExp = maxExp;
+    }
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts.getAndIncrement(stripe() * BUCKETS + index(value));
+        sum.add(value);
+    }
+
+    // Para medir a partir de um System.nanoTime() anterior
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    static int index(long v) {
+        if (v < SUB) return (int) v;
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB - 1);
+        return (exp - SUB_BITS + 1) * SUB + sub;
+    }
+
+    // Primeiro índice com valores >= 2^exp
+    private static int firstIndex(int exp) {
+        return exp <= SUB_BITS ? 1 << exp : (exp - SUB_BITS + 1) * SUB;
+    }
+
+    private static int stripe() {
+        long id = Thread.currentThread().threadId();
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & (STRIPES - 1);
+    }
+
+    long[] snapshot() {
+        long[] merged = new long[BUCKETS];
+        for (int s = 0; s < STRIPES; s++) {
+            for (int i = 0; i < BUCKETS; i++) merged[i] += counts.get(s * BUCKETS + i);
+        }
+        return merged;
+    }
+
+    // Valor (na unidade gravada) abaixo do qual fica a fração q das amostras; limite superior da faixa
+    public long quantile(double q) {
+        long[] b = snapshot();
+        long total = 0;
+        for (long c : b) total += c;
+        if (total == 0) return 0;
+        long target = (long) Math.ceil(q * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += b[i];
+            if (seen >= target && b[i] > 0) return upperBound(i);
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private static long upperBound(int i) {
+        if (i < SUB) return i;
+        int exp = i / SUB + SUB_BITS - 1;
+        long sub = i & (SUB - 1);
+        long width = 1L << (exp - SUB_BITS);
+        return (1L << exp) + (sub + 1) * width - 1;
+    }
+
+    @Override
+    public void writeTo(StringBuilder out) {
+        long[] b = snapshot();
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" histogram\n");
+
+        long cumulative = 0;
+        int i = 0;
+        for (int exp = minExp; exp <= maxExp; exp++) {
+            int end = firstIndex(exp);
+            while (i < end) cumulative += b[i++];
+            out.append(name).append("_bucket{le=\"").append((double) (1L << exp) * scale).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        while (i < BUCKETS) cumulative += b[i++];
+        out.append(name).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+        out.append(name).append("_sum ").append(sum.sum() * scale).append('\n');
+        out.append(name).append("_count ").append(cumulative).append('\n');
+    }
+}
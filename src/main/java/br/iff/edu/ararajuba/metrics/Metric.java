@@ -0,0 +1,6 @@
+package br.iff.edu.ararajuba.metrics;
+
+// Uma família no formato de exposição do Prometheus (text/plain 0.0.4)
+interface Metric {
+    void writeTo(StringBuilder out);
+}
@@ -0,0 +1,64 @@
+package br.iff.edu.ararajuba.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Métricas do broker, estáticas para o caminho quente não pagar injeção nem lookup por nome.
+// Latências em ns, exportadas em segundos.
+public final class Metrics {
+
+    private static final double NANOS = 1e-9;
+    // Fronteiras exportadas das latências: ~1 us (2^10 ns) a ~69 s (2^36 ns)
+    private static final int LATENCY_MIN_EXP = 10;
+    private static final int LATENCY_MAX_EXP = 36;
+
+    private static final List<Metric> ALL = new ArrayList<>();
+
+    public static final Histogram APPEND_LATENCY = latency("ararajuba_log_append_seconds",
+            "Do enfileiramento do append até a confirmação, conforme o modo de flush");
+    public static final Counter APPEND_BYTES = counter("ararajuba_log_append_bytes_total",
+            "Bytes de registros codificados (antes da compressão) escritos no log");
+    public static final Counter APPEND_RECORDS = counter("ararajuba_log_append_records_total",
+            "Registros escritos no log");
+
+    public static final Histogram READ_LATENCY = latency("ararajuba_log_read_seconds",
+            "Duração de CommitLog.readRange");
+    public static final Histogram READ_SCANNED = register(new Histogram("ararajuba_log_read_scanned_records",
+            "Registros percorridos no segmento por leitura, a partir da entrada do índice", 1, 0, 20));
+
+    public static final Histogram POLL_WAIT = latency("ararajuba_poll_wait_seconds",
+            "Tempo de long-poll estacionado esperando mensagens");
+
+    public static final Histogram DELIVERY_ACK_LATENCY = register(new Histogram("ararajuba_delivery_ack_seconds",
+            "Do envio pelo WebSocket até o ack (resolução de ms)", NANOS, 20, 36));
+    public static final Counter DELIVERY_REDELIVERIES = counter("ararajuba_delivery_redeliveries_total",
+            "Mensagens reentregues por timeout de ack");
+    public static final Counter DELIVERY_IN_FLIGHT = register(new Counter("ararajuba_delivery_in_flight",
+            "Mensagens enviadas pelo WebSocket aguardando ack", true));
+
+    public static final Histogram OFFSET_COMMIT_LATENCY = latency("ararajuba_offsets_commit_seconds",
+            "Duração de ConsumerStateStore.commit (memória)");
+    public static final Histogram OFFSET_FLUSH_LATENCY = latency("ararajuba_offsets_flush_seconds",
+            "Gravação e fsync de uma rodada do journal de offsets");
+
+    private Metrics(){}
+
+    private static Histogram latency(String name, String help) {
+        return register(new Histogram(name, help, NANOS, LATENCY_MIN_EXP, LATENCY_MAX_EXP));
+    }
+
+    private static Counter counter(String name, String help) {
+        return register(new Counter(name, help, false));
+    }
+
+    private static <M extends Metric> M register(M m) {
+        ALL.add(m);
+        return m;
+    }
+
+    public static String scrape() {
+        StringBuilder out = new StringBuilder(16 * 1024);
+        for (Metric m : ALL) m.writeTo(out);
+        return out.toString();
+    }
+}
@@ -0,0 +1,39 @@
+package br.iff.edu.ararajuba.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Taxa por segundo no último minuto: 60 fatias de um segundo, cada uma marcada com o segundo a que pertence.
+// Fatia com marca antiga é zerada por quem grava; quem lê ignora fatias fora da janela, sem varrer nada além das 60.
+// Um gravador por vez (o dono da escrita do tópico); leitura concorrente pode ver a fatia corrente incompleta.
+public final class RateWindow {
+
+    private static final int SLOTS = 60;
+
+    private final AtomicLongArray counts = new AtomicLongArray(SLOTS);
+    private final AtomicLongArray seconds = new AtomicLongArray(SLOTS);
+
+    public RateWindow() {
+        for (int i = 0; i < SLOTS; i++) seconds.set(i, -1);
+    }
+
+    public void add(long nowMs, long n) {
+        long sec = nowMs / 1000;
+        int i = (int) (sec % SLOTS);
+        if (seconds.get(i) != sec) {
+            counts.set(i, 0);
+            seconds.set(i, sec);
+        }
+        counts.lazySet(i, counts.get(i) + n);
+    }
+
+    // Média dos últimos 60 segundos completos; o segundo corrente ainda está enchendo e fica de fora
+    public double perSecond(long nowMs) {
+        long sec = nowMs / 1000;
+        long total = 0;
+        for (int i = 0; i < SLOTS; i++) {
+            long s = seconds.get(i);
+            if (s < sec && s >= sec - SLOTS) total += counts.get(i);
+        }
+        return (double) total / SLOTS;
+    }
+}
@@ -1,29 +1,76 @@
 package br.iff.edu.ararajuba.service;
 
 import br.iff.edu.ararajuba.core.Dispatcher;
+import br.iff.edu.ararajuba.core.Partitioner;
 import br.iff.edu.ararajuba.dto.AckDTO;
+import br.iff.edu.ararajuba.dto.GroupLag;
 import br.iff.edu.ararajuba.dto.MessageDTO;
 import br.iff.edu.ararajuba.dto.MessageView;
+import br.iff.edu.ararajuba.dto.PartitionStats;
+import br.iff.edu.ararajuba.dto.PublishAck;
+import br.iff.edu.ararajuba.dto.TopicStats;
 import br.iff.edu.ararajuba.log.CommitLog;
-import br.iff.edu.ararajuba.log.MessageRecord;
+import br.iff.edu.ararajuba.log.LogStats;
+import br.iff.edu.ararajuba.metrics.Metrics;
 import br.iff.edu.ararajuba.state.ConsumerStateStore;
+import br.iff.edu.ararajuba.util.ExecutionMode;
+import br.iff.edu.ararajuba.util.TopicNames;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.NotFoundException;
 
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
 
 @ApplicationScoped
 public class BrokerService {
 
+    private static final int MAX_POLL_BYTES = 4 * 1024 * 1024;
+    private static final int MAX_BATCH_MESSAGES = 10000;
+
     @Inject CommitLog log;
     @Inject ConsumerStateStore state;
     @Inject Dispatcher dispatcher;
+    @Inject Partitioner partitioner;
+
+    // Leituras e escritas das rotas REST e a continuação do long-poll; ver ararajuba.execution.mode
+    private final Executor blocking = ExecutionMode.fromSettings()
+            .executor("ararajuba-request", Infrastructure.getDefaultWorkerPool());
+
+    // Tira a chamada bloqueante do event loop. A falha chega sem o CompletionException em volta,
+    // para o mapeamento de exceções do JAX-RS (400, 404) ver a original.
+    public <T> CompletionStage<T> offload(Callable<? extends CompletionStage<T>> task) {
+        CompletableFuture<T> out = new CompletableFuture<>();
+        blocking.execute(() -> {
+            try {
+                task.call().whenComplete((v, e) -> {
+                    if (e == null) out.complete(v);
+                    else out.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                });
+            } catch (Exception e) {
+                out.completeExceptionally(e);
+            }
+        });
+        return out;
+    }
 
-    public long publish(String topic, MessageDTO messageDTO) throws Exception {
+    public PublishAck publish(String topic, MessageDTO messageDTO) throws Exception {
+        checkTopic(topic);
         if (messageDTO == null) {
             throw new BadRequestException("Corpo JSON ausente ou inválido. Ex.: {\"key\":\"k\",\"value\":\"mensagem\"}");
         }
@@ -34,69 +81,299 @@ public class BrokerService {
         byte[] key = messageDTO.key() == null ? null : messageDTO.key().getBytes(StandardCharsets.UTF_8);
         byte[] val = messageDTO.value().getBytes(StandardCharsets.UTF_8);
 
-        long off = log.append(topic, key, val);
-        dispatcher.enqueue(topic, off);
-        return off;
+        int partition = partitioner.partitionFor(topic, key);
+        String pt = partitioner.partitionTopic(topic, partition);
+        long off = log.append(pt, key, val);
+        dispatcher.enqueue(pt, off);
+        return new PublishAck(partition, off, 1);
+    }
+
+    // Cada partição recebe sua parte do lote com offsets contíguos, na ordem original;
+    // as partições gravam em paralelo. Mensagens sem chave do mesmo lote ficam juntas numa partição.
+    public List<PublishAck> publishBatch(String topic, List<MessageDTO> messages) throws Exception {
+        checkTopic(topic);
+        if (messages == null || messages.isEmpty()) {
+            throw new BadRequestException("Lote vazio. Ex.: [{\"key\":\"k\",\"value\":\"mensagem\"}]");
+        }
+        if (messages.size() > MAX_BATCH_MESSAGES) {
+            throw new BadRequestException("Lote com mais de " + MAX_BATCH_MESSAGES + " mensagens.");
+        }
+
+        Map<Integer, List<byte[]>> keys = new LinkedHashMap<>();
+        Map<Integer, List<byte[]>> vals = new HashMap<>();
+        int keyless = -1;
+        for (int i = 0; i < messages.size(); i++) {
+            MessageDTO m = messages.get(i);
+            if (m == null || m.value() == null) {
+                throw new BadRequestException("Campo \"value\" é obrigatório (mensagem " + i + ").");
+            }
+            byte[] key = m.key() == null ? null : m.key().getBytes(StandardCharsets.UTF_8);
+            int p;
+            if (key != null) {
+                p = partitioner.partitionFor(topic, key);
+            } else {
+                if (keyless < 0) keyless = partitioner.partitionFor(topic, null);
+                p = keyless;
+            }
+            keys.computeIfAbsent(p, x -> new ArrayList<>()).add(key);
+            vals.computeIfAbsent(p, x -> new ArrayList<>()).add(m.value().getBytes(StandardCharsets.UTF_8));
+        }
+
+        Map<Integer, CompletableFuture<Long>> pending = new LinkedHashMap<>();
+        for (Integer p : keys.keySet()) {
+            pending.put(p, log.appendBatchAsync(partitioner.partitionTopic(topic, p), keys.get(p), vals.get(p)));
+        }
+
+        List<PublishAck> out = new ArrayList<>(pending.size());
+        for (Map.Entry<Integer, CompletableFuture<Long>> e : pending.entrySet()) {
+            int p = e.getKey();
+            int count = vals.get(p).size();
+            long first;
+            try {
+                first = e.getValue().join();
+            } catch (CompletionException ex) {
+                if (ex.getCause() instanceof IOException io) throw io;
+                throw ex;
+            }
+            dispatcher.enqueue(partitioner.partitionTopic(topic, p), first + count - 1);
+            out.add(new PublishAck(p, first, count));
+        }
+        return out;
     }
 
-    public List<MessageView> poll(String topic, String consumerGroup, int max, long timeout) throws Exception {
+    // Long-poll assíncrono: se não há mensagens, estaciona num waiter do Dispatcher em vez de
+    // segurar uma thread; a leitura seguinte roda no executor bloqueante quando o append chega.
+    // partition nula lê de todas as partições do tópico, começando por uma diferente a cada chamada.
+    // fromOffset/fromTs reposicionam a leitura (em cada partição lida) no lugar do committed do grupo.
+    public CompletionStage<List<MessageView>> poll(String topic, String consumerGroup, Integer partition,
+                                                   int max, long timeout, Long fromOffset, Long fromTs) throws Exception {
+        checkTopic(topic);
         if (max <= 0) max = 1;
         if (max > 1000) max = 1000;
+        if (fromOffset != null && fromTs != null) {
+            throw new BadRequestException("Use fromOffset ou fromTs, não os dois.");
+        }
+        if ((fromOffset != null && fromOffset < 0) || (fromTs != null && fromTs < 0)) {
+            throw new BadRequestException("fromOffset e fromTs não podem ser negativos.");
+        }
 
         final boolean stateless = (consumerGroup == null || consumerGroup.isBlank());
 
-        long start = System.currentTimeMillis();
-        List<MessageView> out = new ArrayList<>();
+        List<Integer> partitions = partitionsOf(topic, partition);
+        // Sem consumerGroup -> começa do offset 0 e não persiste estado; fromTs é resolvido no primeiro read
+        long[] next = new long[partitions.size()];
+        for (int i = 0; i < next.length; i++) {
+            if (fromOffset != null) next[i] = fromOffset;
+            else if (stateless || fromTs != null) next[i] = 0;
+            else next[i] = state.getCommitted(partitioner.partitionTopic(topic, partitions.get(i)), consumerGroup) + 1;
+        }
+
+        long deadline = System.currentTimeMillis() + timeout;
+        final int limit = max;
+
+        // Partição ainda sendo recuperada na partida: espera a carga sem prender o worker
+        List<CompletableFuture<Void>> loading = new ArrayList<>();
+        for (int p : partitions) {
+            CompletableFuture<Void> f = log.whenLoaded(partitioner.partitionTopic(topic, p));
+            if (!f.isDone()) loading.add(f);
+        }
+        if (!loading.isEmpty()) {
+            return CompletableFuture.allOf(loading.toArray(CompletableFuture[]::new))
+                    .thenComposeAsync(v -> {
+                        try {
+                            return firstRead(topic, partitions, next, fromTs, limit, timeout, deadline);
+                        } catch (IOException e) {
+                            throw new CompletionException(e);
+                        }
+                    }, blocking);
+        }
+        return firstRead(topic, partitions, next, fromTs, max, timeout, deadline);
+    }
+
+    private CompletionStage<List<MessageView>> firstRead(String topic, List<Integer> partitions, long[] next, Long fromTs,
+                                                         int max, long timeout, long deadline) throws IOException {
+        if (fromTs != null) {
+            for (int i = 0; i < next.length; i++) {
+                next[i] = log.offsetForTimestamp(partitioner.partitionTopic(topic, partitions.get(i)), fromTs);
+            }
+        }
+        List<MessageView> out = read(topic, partitions, next, max);
+        if (!out.isEmpty() || timeout <= 0) return CompletableFuture.completedFuture(out);
 
-        // Sem consumerGroup -> começa do offset 0 e não persiste estado
-        long next = stateless ? 0 : state.getCommitted(topic, consumerGroup) + 1;
+        long parked = System.nanoTime();
+        return awaitAndRead(topic, partitions, next, max, deadline)
+                .whenComplete((r, e) -> Metrics.POLL_WAIT.recordSince(parked));
+    }
 
-        while ((System.currentTimeMillis() - start) < timeout) {
-            for (int i = 0; i < max; i++) {
-                Optional<MessageRecord> ropt = log.read(topic, next);
-                if (ropt.isEmpty()) break;
+    private List<Integer> partitionsOf(String topic, Integer partition) {
+        int n = existingPartitions(topic);
+        if (partition != null) {
+            if (partition < 0 || partition >= n) {
+                throw new BadRequestException("Partição inexistente: " + partition + " (tópico com " + n + ").");
+            }
+            return List.of(partition);
+        }
+        List<Integer> all = new ArrayList<>(n);
+        // Começo sorteado para não favorecer sempre a partição 0; não mexe no rodízio dos publishers
+        int start = n == 1 ? 0 : ThreadLocalRandom.current().nextInt(n);
+        for (int i = 0; i < n; i++) all.add((start + i) % n);
+        return all;
+    }
 
-                MessageRecord r = ropt.get();
-                String key = r.key() == null ? null : new String(r.key(), StandardCharsets.UTF_8);
-                String val = r.value() == null ? null : new String(r.value(), StandardCharsets.UTF_8);
+    private CompletionStage<List<MessageView>> awaitAndRead(String topic, List<Integer> partitions, long[] next,
+                                                            int max, long deadline) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) return CompletableFuture.completedFuture(List.of());
 
-                out.add(new MessageView(r.offset(), r.ts(), key, val));
-                next = r.offset() + 1;
+        // Acorda no primeiro append em qualquer uma das partições; as outras esperas são liberadas
+        CompletableFuture<?>[] waits = new CompletableFuture<?>[partitions.size()];
+        for (int i = 0; i < waits.length; i++) {
+            waits[i] = dispatcher.awaitOffset(partitioner.partitionTopic(topic, partitions.get(i)), next[i], remaining);
+        }
+        CompletableFuture<Object> any = waits.length == 1 ? cast(waits[0]) : CompletableFuture.anyOf(waits);
 
-                if (out.size() >= max) break;
+        return any.thenComposeAsync(arrived -> {
+            for (CompletableFuture<?> w : waits) cast(w).complete(false);
+            try {
+                List<MessageView> out = read(topic, partitions, next, max);
+                if (!out.isEmpty() || Boolean.FALSE.equals(arrived)) return CompletableFuture.completedFuture(out);
+                return awaitAndRead(topic, partitions, next, max, deadline);
+            } catch (IOException e) {
+                throw new CompletionException(e);
             }
+        }, blocking);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CompletableFuture<Object> cast(CompletableFuture<?> f) {
+        return (CompletableFuture<Object>) f;
+    }
 
-            if (!out.isEmpty()) break;
-            Thread.sleep(50);
+    private List<MessageView> read(String topic, List<Integer> partitions, long[] next, int max) throws IOException {
+        List<MessageView> out = new ArrayList<>();
+        int[] budget = {MAX_POLL_BYTES};
+        for (int i = 0; i < partitions.size() && out.size() < max && budget[0] > 0; i++) {
+            int p = partitions.get(i);
+            String pt = partitioner.partitionTopic(topic, p);
+            // Offsets anteriores ao início do log já foram apagados pela retenção
+            long from = Math.max(next[i], log.logStartOffset(pt));
+
+            // Key e value viram String direto da faixa lida, sem passar por MessageRecord
+            log.readRange(pt, from, max - out.size(), budget[0], r -> {
+                out.add(new MessageView(r.offset(), r.ts(), r.keyString(), r.valueString(), p));
+                budget[0] -= r.size();
+            });
         }
         return out;
     }
 
 
-    public void ack(String topic, String consumerGroup, AckDTO ackDTO) {
+    // deliveryIds aceita "offset", "inicio-fim" e, em tópicos particionados, "particao:offset" ou
+    // "particao:inicio-fim". Sem prefixo, vale a partição do parâmetro (0 por padrão), que também é a do upTo.
+    public void ack(String topic, String consumerGroup, Integer partition, AckDTO ackDTO) throws IOException {
+        checkTopic(topic);
         if (consumerGroup == null || consumerGroup.isBlank()) return;
-        if (ackDTO == null || ackDTO.ids() == null || ackDTO.ids().isEmpty()) return;
+        if (ackDTO == null) return;
+        boolean hasIds = ackDTO.ids() != null && !ackDTO.ids().isEmpty();
+        if (!hasIds && ackDTO.upTo() == null) return;
 
-        long committed = state.getCommitted(topic, consumerGroup);
-        long nextExpected = committed + 1;
-
-        boolean advanced;
-        do {
-            advanced = false;
+        int n = existingPartitions(topic);
+        int defaultPartition = partition == null ? 0 : partition;
+        Map<Integer, List<String>> byPartition = new HashMap<>();
+        if (hasIds) {
             for (String id : ackDTO.ids()) {
+                if (id == null) continue;
+                int sep = id.indexOf(':');
+                try {
+                    int p = sep < 0 ? defaultPartition : Integer.parseInt(id.substring(0, sep).trim());
+                    byPartition.computeIfAbsent(p, x -> new ArrayList<>()).add(sep < 0 ? id : id.substring(sep + 1));
+                } catch (NumberFormatException ignored) {}
+            }
+        }
+        if (ackDTO.upTo() != null) byPartition.computeIfAbsent(defaultPartition, x -> new ArrayList<>());
+
+        for (Map.Entry<Integer, List<String>> e : byPartition.entrySet()) {
+            int p = e.getKey();
+            if (p < 0 || p >= n) continue;
+            Long upTo = p == defaultPartition ? ackDTO.upTo() : null;
+            ackPartition(partitioner.partitionTopic(topic, p), consumerGroup, upTo, e.getValue());
+        }
+    }
+
+    private void ackPartition(String pt, String consumerGroup, Long upTo, List<String> ids) throws IOException {
+        // Não confirma o que ainda não foi escrito
+        long last = log.nextOffset(pt) - 1;
+        state.ack(pt, consumerGroup, log.logStartOffset(pt), t -> {
+            if (upTo != null) t.ackUpTo(Math.min(upTo, last));
+            for (String id : ids) {
                 try {
-                    long off = Long.parseLong(id);
-                    if (off == nextExpected) {
-                        state.commit(topic, consumerGroup, off);
-                        nextExpected = off + 1;
-                        advanced = true;
+                    int dash = id.indexOf('-', 1);
+                    if (dash < 0) {
+                        long off = Long.parseLong(id.trim());
+                        if (off <= last) t.ack(off);
+                    } else {
+                        long from = Long.parseLong(id.substring(0, dash).trim());
+                        long to = Long.parseLong(id.substring(dash + 1).trim());
+                        t.ackRange(from, Math.min(to, last));
                     }
                 } catch (NumberFormatException ignored) {}
             }
-        } while (advanced);
+        });
+    }
+
+    // O nome chega do cliente (já com o routeGroup); '#' separa as partições nos logs físicos e não pode vir de fora
+    private static void checkTopic(String topic) {
+        if (!TopicNames.isValid(topic)) {
+            throw new BadRequestException("Nome de tópico inválido: \"" + topic + "\". O caractere '"
+                    + TopicNames.PARTITION_SEPARATOR + "' é reservado para partições.");
+        }
+    }
+
+    // Leituras não criam tópico: um nome digitado errado não pode deixar logs vazios para sempre em disco
+    private int existingPartitions(String topic) {
+        int n = partitioner.existing(topic);
+        if (n == 0) throw new NotFoundException("Tópico " + topic + " não encontrado.");
+        return n;
     }
 
-    public List<String> listTopics() throws Exception {
-        return log.listTopics();
+    // Partições aparecem como um único tópico
+    public List<String> listTopics() {
+        return log.topicNames().stream()
+                .map(TopicNames::logicalTopic)
+                .distinct()
+                .toList();
+    }
+
+    // Tudo sai de contadores em memória (CommitLog e ConsumerStateStore): barato o bastante para ser
+    // raspado a cada segundo. Tópicos ainda carregando ficam de fora até terminarem.
+    public List<TopicStats> topicStats() {
+        Map<String, Map<String, Long>> committed = state.committedByTopic();
+        Map<String, List<PartitionStats>> byTopic = new TreeMap<>();
+        for (LogStats s : log.stats()) {
+            List<GroupLag> groups = new ArrayList<>();
+            committed.getOrDefault(s.topic(), Map.of()).forEach((group, off) -> {
+                // Offsets já apagados pela retenção não contam como atraso
+                long lag = Math.max(0, s.nextOffset() - Math.max(off + 1, s.logStartOffset()));
+                groups.add(new GroupLag(group, off, lag));
+            });
+            byTopic.computeIfAbsent(TopicNames.logicalTopic(s.topic()), t -> new ArrayList<>())
+                    .add(new PartitionStats(Math.max(0, TopicNames.partitionOf(s.topic())), s.logStartOffset(),
+                            s.nextOffset(), s.sizeBytes(), s.appendRate(), groups));
+        }
+
+        List<TopicStats> out = new ArrayList<>(byTopic.size());
+        byTopic.forEach((topic, partitions) -> {
+            partitions.sort(Comparator.comparingInt(PartitionStats::partition));
+            out.add(new TopicStats(topic, partitions));
+        });
+        return out;
+    }
+
+    public TopicStats topicStats(String topic) {
+        checkTopic(topic);
+        for (TopicStats s : topicStats()) {
+            if (s.topic().equals(topic)) return s;
+        }
+        throw new NotFoundException("Tópico " + topic + " não encontrado.");
     }
 }
@@ -0,0 +1,98 @@
+package br.iff.edu.ararajuba.state;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Janela deslizante de acks de um tópico/grupo: o bit i marca o offset base + i como confirmado.
+// Quando os primeiros bits ficam contíguos, base avança de uma vez e a janela desliza.
+// Não é thread-safe; ConsumerStateStore serializa o acesso por rastreador com lock.
+public final class AckTracker {
+
+    final ReentrantLock lock = new ReentrantLock();
+
+    // Acks mais distantes que isso do committed são descartados
+    private static final int MAX_WINDOW = 1 << 20;
+
+    // Primeiro offset ainda não confirmado
+    private long base;
+    private long[] bits = new long[2];
+
+    AckTracker(long committed) {
+        this.base = committed + 1;
+    }
+
+    public long committed() {
+        return base - 1;
+    }
+
+    public void ack(long offset) {
+        ackRange(offset, offset);
+    }
+
+    // Cumulativo: confirma tudo até offset, inclusive
+    public void ackUpTo(long offset) {
+        skipTo(offset + 1);
+    }
+
+    // Intervalo fechado [from, to]
+    public void ackRange(long from, long to) {
+        from = Math.max(from, base);
+        if (to < from) return;
+        if (from == base) {
+            skipTo(to + 1);
+            return;
+        }
+
+        to = Math.min(to, base + MAX_WINDOW - 1);
+        if (to < from) return;
+
+        int lo = (int) (from - base);
+        int hi = (int) (to - base);
+        ensureCapacity(hi);
+        int wlo = lo >>> 6;
+        int whi = hi >>> 6;
+        for (int w = wlo; w <= whi; w++) {
+            long mask = -1L;
+            if (w == wlo) mask &= -1L << (lo & 63);
+            if (w == whi) mask &= -1L >>> (63 - (hi & 63));
+            bits[w] |= mask;
+        }
+    }
+
+    // Tudo antes de offset conta como confirmado; depois absorve os acks que ficaram contíguos
+    void skipTo(long offset) {
+        if (offset > base) {
+            shift(offset - base);
+            base = offset;
+        }
+
+        int w = 0;
+        while (w < bits.length && bits[w] == -1L) w++;
+        int run = w * 64 + (w < bits.length ? Long.numberOfTrailingZeros(~bits[w]) : 0);
+        if (run > 0) {
+            shift(run);
+            base += run;
+        }
+    }
+
+    private void shift(long n) {
+        if (n >= (long) bits.length * 64) {
+            Arrays.fill(bits, 0L);
+            return;
+        }
+        int words = (int) (n >>> 6);
+        int b = (int) (n & 63);
+        for (int i = 0; i < bits.length; i++) {
+            int src = i + words;
+            long lo = src < bits.length ? bits[src] : 0L;
+            long hi = src + 1 < bits.length ? bits[src + 1] : 0L;
+            bits[i] = b == 0 ? lo : (lo >>> b) | (hi << (64 - b));
+        }
+    }
+
+    private void ensureCapacity(int bit) {
+        int words = (bit >>> 6) + 1;
+        if (words <= bits.length) return;
+        bits = Arrays.copyOf(bits, Math.max(words, bits.length << 1));
+    }
+}
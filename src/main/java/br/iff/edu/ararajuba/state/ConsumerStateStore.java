@@ -1,39 +1,90 @@
 package br.iff.edu.ararajuba.state;
 
+import br.iff.edu.ararajuba.metrics.Metrics;
+import br.iff.edu.ararajuba.state.OffsetJournal.Key;
+import br.iff.edu.ararajuba.util.Settings;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
+import org.jboss.logging.Logger;
 
 import java.io.IOException;
 import java.nio.file.*;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
+// Offsets confirmados ficam em memória; um flusher grava no journal só o último valor de cada
+// grupo alterado desde a rodada anterior, com um fsync por rodada. O journal é compactado quando cresce.
 @ApplicationScoped
 public class ConsumerStateStore {
 
+    private static final Logger LOG = Logger.getLogger(ConsumerStateStore.class);
+
     private Path baseDir;
     private final ObjectMapper om = new ObjectMapper();
 
+    // Formato antigo (um JSON por tópico/grupo), lido só para migrar
     private static class State {
         public long committedOffset = -1L;
     }
 
-    private final Map<String, State> cache = new ConcurrentHashMap<>();
+    private final Map<Key, AtomicLong> committed = new ConcurrentHashMap<>();
+    private final Set<Key> dirty = ConcurrentHashMap.newKeySet();
+    // Migrados do formato antigo cujo valor ainda não teve fsync no journal; o JSON é apagado depois dele
+    private final Set<Key> migrating = ConcurrentHashMap.newKeySet();
+    private final Map<String, AckTracker> trackers = new ConcurrentHashMap<>();
+
+    private OffsetJournal journal;
+    private long compactBytes;
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ararajuba-offsets-flusher");
+        t.setDaemon(true);
+        return t;
+    });
 
     @PostConstruct
     void init() {
-        String dir = System.getProperty("ararajuba.data.dir");
-        if (dir == null) dir = System.getenv().getOrDefault("ARARAJUBA_DATA_DIR", "data");
+        String dir = Settings.get("ararajuba.data.dir", "data");
         baseDir = Paths.get(dir).resolve("consumer-state");
+        compactBytes = Settings.getLong("ararajuba.offsets.compact-bytes", 4194304L);
+        long interval = Settings.getLong("ararajuba.offsets.flush.interval.ms", 100L);
         try {
             Files.createDirectories(baseDir);
+            journal = new OffsetJournal(baseDir);
+            Map<Key, Long> recovered = new HashMap<>();
+            journal.recover(recovered);
+            recovered.forEach((k, off) -> committed.put(k, new AtomicLong(off)));
+            deleteMigratedLegacy(recovered.keySet());
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            throw new RuntimeException("Falha ao recuperar o journal de offsets em " + baseDir, e);
         }
+        flusher.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
     }
 
-    private Path file(String topic, String group) {
+    @PreDestroy
+    void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        try {
+            journal.close();
+        } catch (IOException ignored) {}
+    }
+
+    private Path legacyFile(String topic, String group) {
         return baseDir.resolve(topic + "__" + group + ".json");
     }
 
@@ -41,32 +92,139 @@ public class ConsumerStateStore {
         return topic + "::" + group;
     }
 
-    public synchronized long getCommitted(String topic, String group) {
-        String k = key(topic, group);
-        State st = cache.computeIfAbsent(k, kk -> {
-            Path f = file(topic, group);
-            if (Files.exists(f)) {
-                try {
-                    return om.readValue(f.toFile(), State.class);
-                } catch (IOException e) {
-                    return new State();
-                }
-            }
-            return new State();
+    public long getCommitted(String topic, String group) {
+        return offset(new Key(topic, group)).get();
+    }
+
+    // O tamanho da chave no journal é conferido uma vez, quando ela entra no mapa; commits seguintes não alocam.
+    // O arquivo antigo é lido fora do mapa: computeIfAbsent seguraria o lock do bin durante o I/O.
+    private AtomicLong offset(Key k) {
+        AtomicLong v = committed.get(k);
+        if (v != null) return v;
+        OffsetJournal.recordSize(k);
+        long legacy = readLegacy(k);
+        AtomicLong created = new AtomicLong(legacy);
+        v = committed.putIfAbsent(k, created);
+        if (v != null) return v;
+        // Grupo ainda no formato antigo: o valor entra no journal na próxima rodada do flusher
+        if (legacy >= 0) {
+            migrating.add(k);
+            dirty.add(k);
+        }
+        return created;
+    }
+
+    private long readLegacy(Key k) {
+        Path f = legacyFile(k.topic(), k.group());
+        if (!Files.exists(f)) return -1L;
+        try {
+            return om.readValue(f.toFile(), State.class).committedOffset;
+        } catch (IOException e) {
+            return -1L;
+        }
+    }
+
+    // JSONs antigos de grupos que já estão no journal (migrados antes de serem apagados aqui)
+    private void deleteMigratedLegacy(Set<Key> inJournal) throws IOException {
+        boolean any;
+        try (var s = Files.list(baseDir)) {
+            any = s.anyMatch(p -> p.getFileName().toString().endsWith(".json"));
+        }
+        if (!any) return;
+        for (Key k : inJournal) deleteLegacy(k);
+    }
+
+    // Se falhar, o arquivo é apagado na próxima partida, quando a chave já estiver no journal
+    private void deleteLegacy(Key k) {
+        migrating.remove(k);
+        try {
+            Files.deleteIfExists(legacyFile(k.topic(), k.group()));
+        } catch (IOException e) {
+            LOG.warnf(e, "Falha ao apagar o offset antigo de %s/%s", k.topic(), k.group());
+        }
+    }
+
+    // Offset confirmado de cada grupo, agrupado por tópico físico, lido só do mapa em memória.
+    // Grupos que ainda estão no formato antigo aparecem depois do primeiro acesso (que os migra).
+    public Map<String, Map<String, Long>> committedByTopic() {
+        Map<String, Map<String, Long>> out = new HashMap<>();
+        committed.forEach((k, v) -> {
+            long off = v.get();
+            if (off >= 0) out.computeIfAbsent(k.topic(), t -> new TreeMap<>()).put(k.group(), off);
         });
-        return st.committedOffset;
+        return out;
+    }
+
+    // Só avança; a gravação em disco fica para o flusher
+    public void commit(String topic, String group, long offset) {
+        long started = System.nanoTime();
+        Key k = new Key(topic, group);
+        AtomicLong v = offset(k);
+        long cur;
+        do {
+            cur = v.get();
+            if (offset <= cur) {
+                Metrics.OFFSET_COMMIT_LATENCY.recordSince(started);
+                return;
+            }
+        } while (!v.compareAndSet(cur, offset));
+        dirty.add(k);
+        Metrics.OFFSET_COMMIT_LATENCY.recordSince(started);
+    }
+
+    // Aplica os acks de uma chamada no rastreador do grupo e persiste uma única vez se o committed avançou.
+    // floor é o início do log: offsets anteriores já foram apagados e contam como confirmados.
+    public long ack(String topic, String group, long floor, Consumer<AckTracker> acks) {
+        AckTracker t = trackers.computeIfAbsent(key(topic, group), k -> new AckTracker(getCommitted(topic, group)));
+        long before;
+        long after;
+        t.lock.lock();
+        try {
+            before = t.committed();
+            t.skipTo(floor);
+            acks.accept(t);
+            after = t.committed();
+        } finally {
+            t.lock.unlock();
+        }
+        if (after > before) commit(topic, group, after);
+        return after;
     }
 
-    public synchronized void commit(String topic, String group, long offset) {
-        String k = key(topic, group);
-        State st = cache.computeIfAbsent(k, kk -> new State());
-        if (offset > st.committedOffset) {
-            st.committedOffset = offset;
-            try {
-                om.writerWithDefaultPrettyPrinter().writeValue(file(topic, group).toFile(), st);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+    // Só a thread do flusher (ou o close, depois dela parar) chega aqui
+    private synchronized void flush() {
+        if (dirty.isEmpty()) return;
+        Map<Key, Long> batch = new HashMap<>();
+        for (Key k : dirty) {
+            // Remove antes de ler: um commit concorrente volta a marcar a chave para a próxima rodada
+            dirty.remove(k);
+            batch.put(k, committed.get(k).get());
+        }
+
+        long started = System.nanoTime();
+        try {
+            journal.append(batch);
+            Metrics.OFFSET_FLUSH_LATENCY.recordSince(started);
+            // O journal já tem, com fsync, um valor >= o do JSON: ele deixa de ser necessário
+            if (!migrating.isEmpty()) {
+                for (Key k : batch.keySet()) {
+                    if (migrating.contains(k)) deleteLegacy(k);
+                }
             }
+            if (journal.size() > compactBytes) compact();
+        } catch (IOException | RuntimeException e) {
+            dirty.addAll(batch.keySet());
+            LOG.error("Falha ao gravar o journal de offsets; nova tentativa na próxima rodada", e);
         }
     }
+
+    private void compact() throws IOException {
+        Map<Key, Long> live = new HashMap<>();
+        committed.forEach((k, v) -> {
+            if (v.get() >= 0) live.put(k, v.get());
+        });
+        journal.compact(live);
+        // Só compensa compactar de novo quando o journal dobrar em relação ao estado vivo
+        compactBytes = Math.max(compactBytes, journal.size() * 2);
+    }
 }
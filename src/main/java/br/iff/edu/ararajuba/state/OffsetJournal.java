@@ -0,0 +1,179 @@
+package br.iff.edu.ararajuba.state;
+
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.*;
+
+// Arquivo único, só de acréscimo, com o offset confirmado de cada tópico/grupo.
+// Registro: total (4), crc32 (4) do resto, offset (8), tlen (2), glen (2), topic, group.
+// Commits só avançam, então vale o maior offset de cada chave; a compactação regrava só o estado vivo e troca o arquivo atomicamente.
+// Só uma thread escreve (o flusher do ConsumerStateStore).
+final class OffsetJournal {
+
+    private static final Logger LOG = Logger.getLogger(OffsetJournal.class);
+
+    static final String FILE_NAME = "offsets.journal";
+    private static final String COMPACT_SUFFIX = ".compact";
+
+    private static final int HEADER = Integer.BYTES + Integer.BYTES;
+    private static final int FIXED = Long.BYTES + Short.BYTES + Short.BYTES;
+
+    record Key(String topic, String group) {}
+
+    private final Path file;
+    private FileChannel ch;
+    private long size;
+
+    OffsetJournal(Path dir) {
+        this.file = dir.resolve(FILE_NAME);
+    }
+
+    // Relê o journal para o mapa; a cauda rasgada ou corrompida por um crash é descartada
+    void recover(Map<Key, Long> out) throws IOException {
+        ch = FileChannel.open(file, CREATE, READ, WRITE);
+        long end = ch.size();
+        ByteBuffer buf = ByteBuffer.allocate((int) Math.min(Math.max(end, HEADER), 1 << 20));
+        long pos = 0;
+        long bufStart = 0;
+        buf.limit(0);
+
+        while (pos + HEADER <= end) {
+            int rel = (int) (pos - bufStart);
+            if (rel + HEADER > buf.limit()) {
+                bufStart = pos;
+                rel = 0;
+                fill(buf, pos, end);
+            }
+            int total = buf.getInt(rel);
+            if (total < HEADER + FIXED || pos + total > end) break;
+            if (rel + total > buf.limit()) {
+                if (total > buf.capacity()) buf = ByteBuffer.allocate(total);
+                bufStart = pos;
+                rel = 0;
+                fill(buf, pos, end);
+            }
+
+            ByteBuffer rec = buf.slice(rel, total).order(ByteOrder.BIG_ENDIAN);
+            int crc = rec.getInt(Integer.BYTES);
+            CRC32 c = new CRC32();
+            c.update(rec.slice(HEADER, total - HEADER));
+            if ((int) c.getValue() != crc) break;
+
+            rec.position(HEADER);
+            long offset = rec.getLong();
+            int tlen = Short.toUnsignedInt(rec.getShort());
+            int glen = Short.toUnsignedInt(rec.getShort());
+            if (FIXED + tlen + glen != total - HEADER) break;
+            String topic = StandardCharsets.UTF_8.decode(rec.slice(rec.position(), tlen)).toString();
+            String group = StandardCharsets.UTF_8.decode(rec.slice(rec.position() + tlen, glen)).toString();
+            out.merge(new Key(topic, group), offset, Math::max);
+            pos += total;
+        }
+
+        if (pos < end) {
+            LOG.warnf("Journal de offsets com cauda inválida em %d de %d bytes; descartando o resto", pos, end);
+            ch.truncate(pos);
+            ch.force(true);
+        }
+        size = pos;
+    }
+
+    private void fill(ByteBuffer buf, long pos, long end) throws IOException {
+        buf.clear().limit((int) Math.min(buf.capacity(), end - pos));
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, pos + buf.position()) < 0) break;
+        }
+        buf.flip();
+    }
+
+    // Grava os registros e faz um único fsync; se a escrita falhar no meio, volta ao tamanho anterior
+    void append(Map<Key, Long> entries) throws IOException {
+        if (entries.isEmpty()) return;
+        ByteBuffer buf = encode(entries);
+        try {
+            while (buf.hasRemaining()) ch.write(buf, size + buf.position());
+            ch.force(false);
+        } catch (IOException e) {
+            try {
+                ch.truncate(size);
+            } catch (IOException ignored) {}
+            throw e;
+        }
+        size += buf.limit();
+    }
+
+    long size() {
+        return size;
+    }
+
+    // Regrava o estado vivo num arquivo novo e o troca pelo atual com rename atômico
+    void compact(Map<Key, Long> live) throws IOException {
+        Path tmp = file.resolveSibling(FILE_NAME + COMPACT_SUFFIX);
+        ByteBuffer buf = encode(live);
+        try (FileChannel out = FileChannel.open(tmp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) out.write(buf);
+            out.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDir();
+
+        ch.close();
+        ch = FileChannel.open(file, READ, WRITE);
+        size = ch.size();
+    }
+
+    private void syncDir() {
+        // Nem todo sistema permite abrir diretório; o rename continua atômico, só não fica garantido em disco
+        try (FileChannel dir = FileChannel.open(file.getParent(), READ)) {
+            dir.force(true);
+        } catch (IOException ignored) {}
+    }
+
+    void close() throws IOException {
+        if (ch != null) ch.close();
+    }
+
+    private static ByteBuffer encode(Map<Key, Long> entries) {
+        int bytes = 0;
+        for (Key k : entries.keySet()) bytes += recordSize(k);
+
+        ByteBuffer buf = ByteBuffer.allocate(bytes).order(ByteOrder.BIG_ENDIAN);
+        CRC32 crc = new CRC32();
+        for (Map.Entry<Key, Long> e : entries.entrySet()) {
+            byte[] t = e.getKey().topic().getBytes(StandardCharsets.UTF_8);
+            byte[] g = e.getKey().group().getBytes(StandardCharsets.UTF_8);
+            int start = buf.position();
+            int total = HEADER + FIXED + t.length + g.length;
+            buf.putInt(total);
+            buf.putInt(0);
+            buf.putLong(e.getValue());
+            buf.putShort((short) t.length);
+            buf.putShort((short) g.length);
+            buf.put(t);
+            buf.put(g);
+
+            crc.reset();
+            crc.update(buf.slice(start + HEADER, total - HEADER));
+            buf.putInt(start + Integer.BYTES, (int) crc.getValue());
+        }
+        return buf.flip();
+    }
+
+    static int recordSize(Key k) {
+        int t = k.topic().getBytes(StandardCharsets.UTF_8).length;
+        int g = k.group().getBytes(StandardCharsets.UTF_8).length;
+        if (t > 0xFFFF || g > 0xFFFF) throw new IllegalArgumentException("Tópico ou grupo longo demais para o journal");
+        return HEADER + FIXED + t + g;
+    }
+}
@@ -0,0 +1,21 @@
+package br.iff.edu.ararajuba.util;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+// Onde roda o trabalho bloqueante (I/O de arquivo, espera de fsync) das rotas REST e do envio do WebSocket.
+// WORKER: pools de threads de plataforma, cujo tamanho limita as requisições em andamento;
+// VIRTUAL: uma virtual thread por tarefa, bloquear só desmonta a thread da carrier.
+public enum ExecutionMode {
+    WORKER, VIRTUAL;
+
+    public static ExecutionMode fromSettings() {
+        return valueOf(Settings.get("ararajuba.execution.mode", "worker").toUpperCase());
+    }
+
+    // No modo VIRTUAL, um executor novo de virtual threads com o prefixo de nome dado; senão, o worker
+    public Executor executor(String name, Executor worker) {
+        if (this == WORKER) return worker;
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+    }
+}
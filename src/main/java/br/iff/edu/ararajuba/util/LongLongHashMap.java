@@ -0,0 +1,125 @@
+package br.iff.edu.ararajuba.util;
+
+import java.util.Arrays;
+
+// Mapa long -> long com endereçamento aberto (sondagem linear), sem boxing.
+// Chaves negativas não são aceitas: -1 marca posição vazia. Não é thread-safe.
+public final class LongLongHashMap {
+
+    public static final long MISSING = Long.MIN_VALUE;
+
+    private static final long EMPTY = -1L;
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, long value);
+    }
+
+    private long[] keys;
+    private long[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    public LongLongHashMap(int expectedSize){
+        int cap = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        allocate(cap);
+    }
+
+    private void allocate(int capacity){
+        keys = new long[capacity];
+        values = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+        resizeAt = capacity / 2;
+    }
+
+    private int slot(long key){
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+    public long get(long key){
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == EMPTY) return MISSING;
+            if (k == key) return values[i];
+        }
+    }
+
+    public long put(long key, long value){
+        if (key < 0) throw new IllegalArgumentException("Chave negativa: " + key);
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) {
+                long old = values[i];
+                values[i] = value;
+                return old;
+            }
+            if (k == EMPTY) {
+                keys[i] = key;
+                values[i] = value;
+                if (++size > resizeAt) rehash(keys.length << 1);
+                return MISSING;
+            }
+        }
+    }
+
+    public long remove(long key){
+        int i = slot(key);
+        while (true) {
+            long k = keys[i];
+            if (k == EMPTY) return MISSING;
+            if (k == key) break;
+            i = (i + 1) & mask;
+        }
+        long old = values[i];
+
+        // Remoção com deslocamento para trás: mantém as cadeias de sondagem sem lápides
+        int gap = i;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            long k = keys[j];
+            if (k == EMPTY) break;
+            int ideal = slot(k);
+            if (((j - ideal) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = k;
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        keys[gap] = EMPTY;
+        size--;
+        return old;
+    }
+
+    public void forEach(EntryConsumer consumer){
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) consumer.accept(keys[i], values[i]);
+        }
+    }
+
+    public void clear(){
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    private void rehash(int capacity){
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(capacity);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) put(oldKeys[i], oldValues[i]);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package br.iff.edu.ararajuba.util;
+
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.util.Optional;
+
+public final class Settings {
+
+    private Settings(){}
+
+    // Mesma precedência usada em ararajuba.data.dir: -Dpropriedade, depois ARARAJUBA_XXX no ambiente e,
+    // por último, a configuração do Quarkus (application.properties)
+    public static String get(String property, String defaultValue){
+        String v = System.getProperty(property);
+        if (v == null) v = System.getenv(envName(property));
+        if (v == null) v = config(property).orElse(null);
+        return v == null ? defaultValue : v.trim();
+    }
+
+    public static long getLong(String property, long defaultValue){
+        String v = get(property, null);
+        return v == null ? defaultValue : Long.parseLong(v);
+    }
+
+    public static int getInt(String property, int defaultValue){
+        String v = get(property, null);
+        return v == null ? defaultValue : Integer.parseInt(v);
+    }
+
+    // Fora do Quarkus (benchmarks, ferramentas) pode não haver configuração registrada: vale o default
+    private static Optional<String> config(String property){
+        try {
+            return ConfigProvider.getConfig().getOptionalValue(property, String.class);
+        } catch (IllegalStateException e) {
+            return Optional.empty();
+        }
+    }
+
+    static String envName(String property){
+        return property.toUpperCase().replace('.', '_').replace('-', '_');
+    }
+}
@@ -2,11 +2,40 @@ package br.iff.edu.ararajuba.util;
 
 public final class TopicNames {
 
+    // Partições de um tópico particionado viram logs físicos "topico#N"; com uma partição o nome não muda
+    public static final char PARTITION_SEPARATOR = '#';
+
     private TopicNames(){}
 
+    // Nome vindo de cliente: o separador de partição é reservado aos logs físicos, senão "orders#1" seria lido
+    // como a partição 1 de "orders"
+    public static boolean isValid(String topic){
+        return topic != null && !topic.isBlank() && topic.indexOf(PARTITION_SEPARATOR) < 0;
+    }
+
     public static String physicalTopic(String topic, String routeGroup){
         if (routeGroup == null || routeGroup.isBlank()) return topic;
 
         return topic + "__" + routeGroup;
     }
+
+    public static String partitionTopic(String topic, int partition, int partitions){
+        if (partitions <= 1) return topic;
+
+        return topic + PARTITION_SEPARATOR + partition;
+    }
+
+    // Número da partição no nome físico, ou -1 se o nome não é de uma partição
+    public static int partitionOf(String name){
+        int sep = name.lastIndexOf(PARTITION_SEPARATOR);
+        if (sep <= 0 || sep == name.length() - 1) return -1;
+        for (int i = sep + 1; i < name.length(); i++) {
+            if (!Character.isDigit(name.charAt(i))) return -1;
+        }
+        return Integer.parseInt(name, sep + 1, name.length(), 10);
+    }
+
+    public static String logicalTopic(String name){
+        return partitionOf(name) < 0 ? name : name.substring(0, name.lastIndexOf(PARTITION_SEPARATOR));
+    }
 }
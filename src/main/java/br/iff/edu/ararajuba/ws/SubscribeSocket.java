@@ -1,12 +1,17 @@
 package br.iff.edu.ararajuba.ws;
 
+import br.iff.edu.ararajuba.core.BinaryFrames;
 import br.iff.edu.ararajuba.core.DeliveryService;
+import br.iff.edu.ararajuba.util.TopicNames;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.websocket.*;
 import jakarta.websocket.server.ServerEndpoint;
 
-@ServerEndpoint("/ws/subscribe")
+import java.nio.ByteBuffer;
+
+// Sem subprotocolo: um frame JSON por mensagem; com ararajuba.binary.v1: lotes binários (ver BinaryFrames)
+@ServerEndpoint(value = "/ws/subscribe", subprotocols = {BinaryFrames.SUBPROTOCOL})
 @ApplicationScoped
 public class SubscribeSocket {
 
@@ -17,8 +22,28 @@ public class SubscribeSocket {
     public void onOpen(Session session) {
         var q = session.getRequestParameterMap();
         String topic = q.getOrDefault("topic", java.util.List.of("default")).get(0);
-        String group = q.getOrDefault("group", java.util.List.of("anon")).get(0);
-        delivery.register(topic, group, session);
+        if (!TopicNames.isValid(topic)) {
+            try {
+                session.close(new CloseReason(CloseReason.CloseCodes.CANNOT_ACCEPT,
+                        "Nome de tópico inválido: '" + TopicNames.PARTITION_SEPARATOR + "' é reservado para partições."));
+            } catch (java.io.IOException ignored) {}
+            return;
+        }
+        // Sem group a sessão não entra em grupo nenhum: recebe todas as partições (ver DeliveryService.register)
+        java.util.List<String> groups = q.get("group");
+        String group = groups == null || groups.isEmpty() || groups.get(0).isBlank() ? null : groups.get(0);
+        delivery.register(topic, group, session, longParam(q, "fromOffset"), longParam(q, "fromTs"));
+    }
+
+    // -1 se ausente ou inválido
+    private static long longParam(java.util.Map<String, java.util.List<String>> q, String name) {
+        java.util.List<String> v = q.get(name);
+        if (v == null || v.isEmpty()) return -1;
+        try {
+            return Math.max(-1, Long.parseLong(v.get(0)));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
     @OnMessage
@@ -26,6 +51,11 @@ public class SubscribeSocket {
         delivery.ack(session, text);
     }
 
+    @OnMessage
+    public void onBinary(Session session, ByteBuffer data) {
+        delivery.ackUpTo(session, data);
+    }
+
     @OnClose
     public void onClose(Session session) {
         delivery.unregister(session);
@@ -0,0 +1,46 @@
+package br.iff.edu.ararajuba;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+// Monta os beans fora do Quarkus, como os benchmarks: injeta os campos @Inject e chama @PostConstruct/@PreDestroy
+// como o ArC faria, inclusive os que são package-private em outro pacote
+public final class Fixtures {
+
+    private Fixtures(){}
+
+    public static <T> T inject(T bean, String field, Object value) {
+        try {
+            Field f = bean.getClass().getDeclaredField(field);
+            f.setAccessible(true);
+            f.set(bean, value);
+            return bean;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Campo " + field + " não encontrado em " + bean.getClass().getSimpleName(), e);
+        }
+    }
+
+    public static <T> T start(T bean) {
+        invoke(bean, PostConstruct.class);
+        return bean;
+    }
+
+    public static void stop(Object bean) {
+        if (bean != null) invoke(bean, PreDestroy.class);
+    }
+
+    private static void invoke(Object bean, Class<? extends java.lang.annotation.Annotation> lifecycle) {
+        for (Method m : bean.getClass().getDeclaredMethods()) {
+            if (!m.isAnnotationPresent(lifecycle)) continue;
+            try {
+                m.setAccessible(true);
+                m.invoke(bean);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Falha em " + bean.getClass().getSimpleName() + "." + m.getName(), e);
+            }
+        }
+    }
+}
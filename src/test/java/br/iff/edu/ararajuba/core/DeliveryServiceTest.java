@@ -0,0 +1,191 @@
+package br.iff.edu.ararajuba.core;
+
+import br.iff.edu.ararajuba.Fixtures;
+import br.iff.edu.ararajuba.log.CommitLog;
+import br.iff.edu.ararajuba.state.ConsumerStateStore;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.websocket.RemoteEndpoint;
+import jakarta.websocket.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeliveryServiceTest {
+
+    private static final String[] PROPERTIES = {"ararajuba.data.dir", "ararajuba.log.flush.mode",
+            "ararajuba.topic.partitions", "ararajuba.delivery.ack-timeout.ms"};
+    private static final String TOPIC = "orders";
+
+    @TempDir
+    Path dir;
+
+    private CommitLog log;
+    private ConsumerStateStore state;
+    private Dispatcher dispatcher;
+    private Partitioner partitioner;
+    private DeliveryService delivery;
+    private final ObjectMapper om = new ObjectMapper();
+    private final List<FakeSession> sessions = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        System.setProperty("ararajuba.data.dir", dir.toString());
+        System.setProperty("ararajuba.log.flush.mode", "none");
+        System.setProperty("ararajuba.topic.partitions", "4");
+        // Nada é confirmado nos testes: sem reentrega por timeout no meio deles
+        System.setProperty("ararajuba.delivery.ack-timeout.ms", "600000");
+        log = Fixtures.start(new CommitLog());
+        log.whenReady().join();
+        state = Fixtures.start(new ConsumerStateStore());
+        dispatcher = new Dispatcher();
+        partitioner = Fixtures.inject(new Partitioner(), "log", log);
+        delivery = new DeliveryService();
+        Fixtures.inject(delivery, "log", log);
+        Fixtures.inject(delivery, "state", state);
+        Fixtures.inject(delivery, "dispatcher", dispatcher);
+        Fixtures.inject(delivery, "partitioner", partitioner);
+        Fixtures.start(delivery);
+        partitioner.count(TOPIC);
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (FakeSession s : sessions) delivery.unregister(s.proxy);
+        Fixtures.stop(state);
+        Fixtures.stop(log);
+        for (String p : PROPERTIES) System.clearProperty(p);
+    }
+
+    // Sessão WebSocket de texto que só guarda os frames enviados
+    private final class FakeSession {
+        final String id = "s" + sessions.size();
+        final BlockingQueue<String> frames = new LinkedBlockingQueue<>();
+        volatile boolean open = true;
+        final Session proxy;
+
+        FakeSession() {
+            Object remote = Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{RemoteEndpoint.Async.class},
+                    (p, m, args) -> {
+                        if (m.getName().equals("sendText") && args.length == 1) {
+                            frames.add((String) args[0]);
+                            return CompletableFuture.completedFuture(null);
+                        }
+                        throw new UnsupportedOperationException(m.getName());
+                    });
+            proxy = (Session) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Session.class},
+                    (p, m, args) -> switch (m.getName()) {
+                        case "getId" -> id;
+                        case "isOpen" -> open;
+                        case "close" -> { open = false; yield null; }
+                        case "getAsyncRemote" -> remote;
+                        case "getNegotiatedSubprotocol" -> null;
+                        case "hashCode" -> System.identityHashCode(p);
+                        case "equals" -> p == args[0];
+                        case "toString" -> id;
+                        default -> throw new UnsupportedOperationException(m.getName());
+                    });
+            sessions.add(this);
+        }
+
+        // partição -> offsets recebidos, esperando até chegarem n frames; depois confere que não vem mais nada
+        Map<Integer, List<Long>> take(int n) throws Exception {
+            Map<Integer, List<Long>> out = new TreeMap<>();
+            for (int i = 0; i < n; i++) {
+                String f = frames.poll(5, TimeUnit.SECONDS);
+                assertNotNull(f, "esperava " + n + " frames em " + id + ", chegaram " + i);
+                JsonNode node = om.readTree(f);
+                out.computeIfAbsent(node.get("partition").asInt(), p -> new ArrayList<>()).add(node.get("offset").asLong());
+            }
+            assertNull(frames.poll(200, TimeUnit.MILLISECONDS), "frame a mais em " + id);
+            return out;
+        }
+    }
+
+    private FakeSession join(String group) {
+        return join(group, -1);
+    }
+
+    private FakeSession join(String group, long fromOffset) {
+        FakeSession s = new FakeSession();
+        delivery.register(TOPIC, group, s.proxy, fromOffset, -1);
+        return s;
+    }
+
+    private void publish(int partition, int records) throws Exception {
+        String pt = partitioner.partitionTopic(TOPIC, partition);
+        for (int i = 0; i < records; i++) {
+            long off = log.append(pt, null, ("v" + i).getBytes(StandardCharsets.UTF_8));
+            dispatcher.enqueue(pt, off);
+        }
+    }
+
+    private void publishEverywhere(int records) throws Exception {
+        for (int p = 0; p < 4; p++) publish(p, records);
+    }
+
+    // A entrada de b revoga as partições 2 e 3 de a: cada uma fica com um único dono
+    @Test
+    void twoMembersSplitThePartitions() throws Exception {
+        FakeSession a = join("g");
+        FakeSession b = join("g");
+        publishEverywhere(2);
+
+        assertEquals(Map.of(0, List.of(0L, 1L), 1, List.of(0L, 1L)), a.take(4));
+        assertEquals(Map.of(2, List.of(0L, 1L), 3, List.of(0L, 1L)), b.take(4));
+    }
+
+    // Sem ack, o que b recebeu volta a ser entregue, agora para a, a partir do committed do grupo
+    @Test
+    void partitionsOfALeavingMemberMoveToTheOthers() throws Exception {
+        FakeSession a = join("g");
+        FakeSession b = join("g");
+        publishEverywhere(1);
+        a.take(2);
+        b.take(2);
+
+        delivery.unregister(b.proxy);
+        assertFalse(b.open);
+        assertEquals(Map.of(2, List.of(0L), 3, List.of(0L)), a.take(2));
+
+        publishEverywhere(1);
+        assertEquals(Map.of(0, List.of(1L), 1, List.of(1L), 2, List.of(1L), 3, List.of(1L)), a.take(4));
+    }
+
+    @Test
+    void sessionsWithoutGroupEachReceiveEveryRecord() throws Exception {
+        FakeSession a = join(null);
+        FakeSession b = join(null);
+        publishEverywhere(2);
+
+        Map<Integer, List<Long>> all = Map.of(0, List.of(0L, 1L), 1, List.of(0L, 1L), 2, List.of(0L, 1L), 3, List.of(0L, 1L));
+        assertEquals(all, a.take(8));
+        assertEquals(all, b.take(8));
+    }
+
+    // fromOffset vale para a primeira atribuição; a partição que volta depois de um rebalanceamento sai do committed
+    @Test
+    void fromOffsetAppliesOnlyToTheFirstAssignment() throws Exception {
+        publishEverywhere(3);
+        FakeSession a = join("g", 2);
+        assertEquals(Map.of(0, List.of(2L), 1, List.of(2L), 2, List.of(2L), 3, List.of(2L)), a.take(4));
+
+        FakeSession b = join("g");
+        assertEquals(Map.of(2, List.of(0L, 1L, 2L), 3, List.of(0L, 1L, 2L)), b.take(6));
+
+        delivery.unregister(b.proxy);
+        assertEquals(Map.of(2, List.of(0L, 1L, 2L), 3, List.of(0L, 1L, 2L)), a.take(6));
+    }
+}
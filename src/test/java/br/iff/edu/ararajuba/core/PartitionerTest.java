@@ -0,0 +1,130 @@
+package br.iff.edu.ararajuba.core;
+
+import br.iff.edu.ararajuba.Fixtures;
+import br.iff.edu.ararajuba.log.CommitLog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartitionerTest {
+
+    private static final String[] PROPERTIES = {"ararajuba.data.dir", "ararajuba.log.flush.mode", "ararajuba.topic.partitions"};
+
+    @TempDir
+    Path dir;
+
+    private CommitLog log;
+
+    @AfterEach
+    void tearDown() {
+        Fixtures.stop(log);
+        for (String p : PROPERTIES) System.clearProperty(p);
+    }
+
+    // Reabre o log no mesmo diretório, como num restart; o Partitioner novo não tem nada em cache
+    private Partitioner restart(int partitions) {
+        Fixtures.stop(log);
+        System.setProperty("ararajuba.data.dir", dir.toString());
+        System.setProperty("ararajuba.log.flush.mode", "none");
+        System.setProperty("ararajuba.topic.partitions", String.valueOf(partitions));
+        log = Fixtures.start(new CommitLog());
+        log.whenReady().join();
+        Partitioner p = new Partitioner();
+        p.log = log;
+        return p;
+    }
+
+    private static byte[] key(int i) {
+        return ("user-" + i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void sameKeySamePartitionAcrossRestarts() {
+        Partitioner p = restart(4);
+        int[] first = new int[200];
+        Set<Integer> used = new HashSet<>();
+        for (int i = 0; i < first.length; i++) {
+            first[i] = p.partitionFor("orders", key(i));
+            assertEquals(first[i], p.partitionFor("orders", key(i)));
+            used.add(first[i]);
+        }
+        assertEquals(Set.of(0, 1, 2, 3), used);
+
+        p = restart(4);
+        for (int i = 0; i < first.length; i++) assertEquals(first[i], p.partitionFor("orders", key(i)));
+    }
+
+    @Test
+    void keylessMessagesRotate() {
+        Partitioner p = restart(4);
+        List<Integer> seen = new ArrayList<>();
+        for (int i = 0; i < 8; i++) seen.add(p.partitionFor("orders", null));
+        for (int i = 1; i < seen.size(); i++) assertEquals((seen.get(i - 1) + 1) % 4, (int) seen.get(i));
+
+        // Ler a contagem (poll, assinatura) não mexe no rodízio
+        p.existing("orders");
+        p.partitionTopics("orders");
+        assertEquals((seen.get(7) + 1) % 4, p.partitionFor("orders", null));
+    }
+
+    @Test
+    void singlePartitionKeepsThePlainName() {
+        Partitioner p = restart(1);
+        assertEquals(0, p.partitionFor("orders", key(1)));
+        assertEquals(0, p.partitionFor("orders", null));
+        assertEquals(List.of("orders"), p.partitionTopics("orders"));
+        assertTrue(Files.isDirectory(dir.resolve("topics").resolve("orders")));
+    }
+
+    @Test
+    void partitionCountIsReadFromDiskAfterRestart() throws Exception {
+        Partitioner p = restart(4);
+        assertEquals(4, p.count("orders"));
+        for (int i = 0; i < 4; i++) assertTrue(Files.isDirectory(dir.resolve("topics").resolve("orders#" + i)));
+
+        // O padrão mudou, mas o tópico que já existe continua com o que está em disco
+        p = restart(2);
+        assertEquals(4, p.existing("orders"));
+        assertEquals(4, p.count("orders"));
+        assertEquals("orders#3", p.partitionTopic("orders", 3));
+        assertEquals(2, p.count("novo"));
+    }
+
+    @Test
+    void readsDoNotCreateTopics() throws Exception {
+        Partitioner p = restart(3);
+        assertEquals(0, p.existing("typo"));
+        assertTrue(p.partitionTopics("typo").isEmpty());
+        assertTrue(log.listTopics().isEmpty());
+        assertTrue(log.topicNames().isEmpty());
+    }
+
+    @Test
+    void creationIsAnnouncedOnce() {
+        Partitioner p = restart(2);
+        List<String> created = new ArrayList<>();
+        p.onCreated(created::add);
+
+        p.existing("orders");
+        p.count("orders");
+        p.count("orders");
+        p.partitionFor("orders", null);
+        assertEquals(List.of("orders"), created);
+
+        // Já existia em disco: não é criação
+        p = restart(2);
+        p.onCreated(created::add);
+        p.count("orders");
+        assertEquals(List.of("orders"), created);
+    }
+}
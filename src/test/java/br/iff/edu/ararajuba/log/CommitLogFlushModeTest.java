@@ -0,0 +1,151 @@
+package br.iff.edu.ararajuba.log;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Nos modos interval e records a confirmação vem do flusher; nenhum append pode ficar esquecido na fila
+class CommitLogFlushModeTest {
+
+    private static final String[] PROPERTIES = {
+            "ararajuba.data.dir", "ararajuba.log.flush.mode", "ararajuba.log.flush.interval.ms", "ararajuba.log.flush.records"};
+
+    @TempDir
+    Path dir;
+
+    private CommitLog log;
+
+    @AfterEach
+    void tearDown() {
+        if (log != null) log.close();
+        for (String p : PROPERTIES) System.clearProperty(p);
+    }
+
+    private CommitLog open(String mode) {
+        return open(mode, 5, 1000);
+    }
+
+    private CommitLog open(String mode, long intervalMs, int records) {
+        System.setProperty("ararajuba.data.dir", dir.toString());
+        System.setProperty("ararajuba.log.flush.mode", mode);
+        System.setProperty("ararajuba.log.flush.interval.ms", String.valueOf(intervalMs));
+        System.setProperty("ararajuba.log.flush.records", String.valueOf(records));
+        log = new CommitLog();
+        log.init();
+        log.whenReady().join();
+        return log;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void sequentialAppendsCompleteInIntervalMode() throws Exception {
+        sequential(open("interval"));
+    }
+
+    @Test
+    void sequentialAppendsCompleteInRecordsMode() throws Exception {
+        sequential(open("records"));
+    }
+
+    @Test
+    void concurrentAppendsCompleteInIntervalMode() throws Exception {
+        concurrent(open("interval"));
+    }
+
+    @Test
+    void concurrentAppendsCompleteInRecordsMode() throws Exception {
+        concurrent(open("records"));
+    }
+
+    private static void sequential(CommitLog log) throws Exception {
+        for (int i = 0; i < 300; i++) {
+            long off = log.appendAsync("t", null, bytes("v" + i)).get(5, TimeUnit.SECONDS);
+            assertEquals(i, off);
+        }
+        assertEquals(300, log.nextOffset("t"));
+    }
+
+    private static void concurrent(CommitLog log) throws Exception {
+        int threads = 8;
+        int perThread = 200;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int id = t;
+                workers.add(pool.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        log.appendAsync("t", null, bytes(id + ":" + i)).get(5, TimeUnit.SECONDS);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> w : workers) w.get(30, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals((long) threads * perThread, log.nextOffset("t"));
+    }
+
+    @Test
+    void appendsAfterCloseFail() throws Exception {
+        CommitLog l = open("interval");
+        l.appendAsync("t", null, bytes("a")).get(5, TimeUnit.SECONDS);
+        l.close();
+        log = null;
+
+        CompletableFuture<Long> late = l.appendAsync("t", null, bytes("b"));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> late.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof java.io.IOException);
+    }
+
+    // Escrito mas sem fsync não é visível: nem pelo cache da cauda, nem pelo segmento, nem em nextOffset
+    @Test
+    void readsStopAtTheLastFsync() throws Exception {
+        CommitLog l = open("records", 60000, 3);
+        List<CompletableFuture<Long>> first = new ArrayList<>();
+        for (int i = 0; i < 2; i++) first.add(l.appendAsync("t", null, bytes("v" + i)));
+
+        assertFalse(first.get(1).isDone());
+        assertEquals(0, l.nextOffset("t"));
+        assertTrue(l.readRange("t", 0, 10, Integer.MAX_VALUE).isEmpty());
+        assertTrue(l.read("t", 0).isEmpty());
+
+        long third = l.appendAsync("t", null, bytes("v2")).get(5, TimeUnit.SECONDS);
+        assertEquals(2, third);
+        assertTrue(first.get(0).isDone());
+        assertEquals(3, l.nextOffset("t"));
+        assertEquals(3, l.readRange("t", 0, 10, Integer.MAX_VALUE).size());
+    }
+
+    // flush.records conta mensagens: um lote do tamanho do limite já dispara o fsync, sem esperar o intervalo
+    @Test
+    void batchCountsEachRecordTowardsFlushRecords() throws Exception {
+        CommitLog l = open("records", 60000, 100);
+        List<byte[]> keys = new ArrayList<>();
+        List<byte[]> values = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            keys.add(null);
+            values.add(bytes("v" + i));
+        }
+        long first = l.appendBatchAsync("t", keys, values).get(5, TimeUnit.SECONDS);
+        assertEquals(0, first);
+        assertEquals(100, l.nextOffset("t"));
+    }
+}
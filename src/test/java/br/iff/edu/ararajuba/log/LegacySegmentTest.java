@@ -0,0 +1,74 @@
+package br.iff.edu.ararajuba.log;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// O segmento v0 de exemplo em data/topics continua legível depois de reabrir o log, inclusive
+// com registros v2 acrescentados depois dele no mesmo arquivo
+class LegacySegmentTest {
+
+    private static final Path SAMPLE = Path.of("data", "topics", "meu-topico", "000000000000.log");
+
+    @TempDir
+    Path dir;
+
+    private CommitLog log;
+
+    @AfterEach
+    void tearDown() {
+        if (log != null) log.close();
+        System.clearProperty("ararajuba.data.dir");
+    }
+
+    private CommitLog open() {
+        System.setProperty("ararajuba.data.dir", dir.toString());
+        log = new CommitLog();
+        log.init();
+        log.whenReady().join();
+        return log;
+    }
+
+    private void close() {
+        log.close();
+        log = null;
+    }
+
+    private static String text(byte[] b) {
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void legacySegmentReadsBackAcrossRestarts() throws Exception {
+        // Cópia: abrir o log cria índices e pode truncar, e o arquivo do repositório não deve mudar
+        Path topic = Files.createDirectories(dir.resolve("topics").resolve("meu-topico"));
+        Files.copy(SAMPLE, topic.resolve(SAMPLE.getFileName()));
+        long legacySize = Files.size(SAMPLE);
+
+        CommitLog l = open();
+        assertEquals(1, l.nextOffset("meu-topico"));
+        MessageRecord first = l.read("meu-topico", 0).orElseThrow();
+        assertEquals("user-1", text(first.key()));
+        assertEquals("mensagem teste", text(first.value()));
+        assertEquals(legacySize, Files.size(topic.resolve(SAMPLE.getFileName())));
+
+        assertEquals(1, l.append("meu-topico", "user-2".getBytes(StandardCharsets.UTF_8), "nova".getBytes(StandardCharsets.UTF_8)));
+        close();
+
+        l = open();
+        assertEquals(2, l.nextOffset("meu-topico"));
+        List<MessageRecord> records = l.readRange("meu-topico", 0, 10, Integer.MAX_VALUE);
+        assertEquals(2, records.size());
+        assertEquals(first.ts(), records.get(0).ts());
+        assertEquals("mensagem teste", text(records.get(0).value()));
+        assertEquals("user-2", text(records.get(1).key()));
+        assertEquals("nova", text(records.get(1).value()));
+    }
+}
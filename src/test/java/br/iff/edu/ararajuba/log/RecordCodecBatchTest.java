@@ -0,0 +1,138 @@
+package br.iff.edu.ararajuba.log;
+
+import br.iff.edu.ararajuba.log.LogConfig.Compression;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Lotes v1: ida e volta com e sem compressão, CRC32C marcado nos atributos e lotes antigos com CRC32
+class RecordCodecBatchTest {
+
+    private static final int ATTRIBUTES_POS = 9;
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // count entradas v2 com values repetitivos (compressíveis)
+    private static ByteBuffer entries(int count) {
+        ByteBuffer src = ByteBuffer.allocate(64 * 1024);
+        for (int i = 0; i < count; i++) {
+            RecordCodec.encode(src, 1000 + i, bytes("k" + i), bytes("mensagem repetida ".repeat(5) + i));
+        }
+        return src;
+    }
+
+    // Poucas entradas sem key e com values aleatórios grandes: os cabeçalhos não bastam para a compressão compensar
+    private static ByteBuffer randomEntries(int count) {
+        Random rnd = new Random(1);
+        ByteBuffer src = ByteBuffer.allocate(64 * 1024);
+        for (int i = 0; i < count; i++) {
+            byte[] value = new byte[2000];
+            rnd.nextBytes(value);
+            RecordCodec.encode(src, 1000 + i, null, value);
+        }
+        return src;
+    }
+
+    private static ByteBuffer batch(ByteBuffer src, Compression compression) {
+        int count = 0;
+        for (int p = 0; p < src.position(); p += src.getInt(p)) count++;
+        ByteBuffer dst = ByteBuffer.allocate(RecordCodec.BATCH_HEADER_SIZE + src.position());
+        RecordCodec.encodeBatch(src, 0, src.position(), count, compression, dst);
+        return dst.flip();
+    }
+
+    private static List<MessageRecord> decode(ByteBuffer batch, long baseOffset, long from) {
+        List<MessageRecord> out = new ArrayList<>();
+        assertTrue(RecordCodec.decode(baseOffset, batch, 0, from,
+                new RecordSink(Integer.MAX_VALUE, Integer.MAX_VALUE, r -> out.add(r.toRecord()))));
+        return out;
+    }
+
+    private static void assertRoundTrip(ByteBuffer src, ByteBuffer batch) {
+        int count = RecordCodec.recordCount(batch, 0);
+        assertTrue(RecordCodec.verify(batch));
+        assertTrue(RecordCodec.isBatch(batch, 0));
+        assertEquals(1000, RecordCodec.firstTimestamp(batch, 0));
+        assertEquals(1000 + count - 1, RecordCodec.maxTimestamp(batch, 0));
+
+        List<MessageRecord> records = decode(batch, 500, 0);
+        assertEquals(count, records.size());
+        for (int i = 0, p = 0; i < count; i++) {
+            MessageRecord expected = RecordCodec.decode(500 + i, src.duplicate().position(p));
+            MessageRecord r = records.get(i);
+            assertEquals(expected.offset(), r.offset());
+            assertEquals(expected.ts(), r.ts());
+            assertArrayEquals(expected.key(), r.key());
+            assertArrayEquals(expected.value(), r.value());
+            p += src.getInt(p);
+        }
+
+        // Leitura que começa no meio do lote pula os anteriores
+        List<MessageRecord> tail = decode(batch, 500, 500 + count - 2);
+        assertEquals(2, tail.size());
+        assertEquals(500 + count - 2, tail.get(0).offset());
+    }
+
+    @Test
+    void uncompressedBatchRoundTrips() {
+        ByteBuffer src = entries(50);
+        ByteBuffer batch = batch(src, Compression.NONE);
+        assertEquals(50, RecordCodec.recordCount(batch, 0));
+        assertEquals(0x08 | Compression.NONE.ordinal(), batch.get(ATTRIBUTES_POS));
+        assertRoundTrip(src, batch);
+    }
+
+    @Test
+    void deflatedBatchRoundTrips() {
+        ByteBuffer src = entries(50);
+        ByteBuffer batch = batch(src, Compression.DEFLATE);
+        assertEquals(0x08 | Compression.DEFLATE.ordinal(), batch.get(ATTRIBUTES_POS));
+        assertTrue(batch.limit() < src.position());
+        assertRoundTrip(src, batch);
+    }
+
+    @Test
+    void incompressibleBatchIsStoredWithoutCodec() {
+        ByteBuffer src = randomEntries(3);
+        ByteBuffer batch = batch(src, Compression.DEFLATE);
+        assertEquals(0x08 | Compression.NONE.ordinal(), batch.get(ATTRIBUTES_POS));
+        assertRoundTrip(src, batch);
+    }
+
+    // Lotes gravados antes do bit de CRC32C têm CRC32 e atributos só com o codec
+    @Test
+    void legacyCrc32BatchStillVerifies() {
+        ByteBuffer src = entries(50);
+        ByteBuffer batch = batch(src, Compression.NONE);
+        batch.put(ATTRIBUTES_POS, (byte) Compression.NONE.ordinal());
+        CRC32 crc = new CRC32();
+        crc.update(batch.duplicate().position(8));
+        batch.putInt(4, (int) crc.getValue());
+
+        assertRoundTrip(src, batch);
+    }
+
+    @Test
+    void crcMismatchIsRejected() {
+        for (Compression c : Compression.values()) {
+            ByteBuffer batch = batch(entries(50), c);
+            int at = RecordCodec.BATCH_HEADER_SIZE + 3;
+            batch.put(at, (byte) (batch.get(at) ^ 0x01));
+            assertFalse(RecordCodec.verify(batch), c.name());
+        }
+
+        // Atributo de CRC trocado também não passa: o CRC32C não confere como CRC32
+        ByteBuffer batch = batch(entries(50), Compression.NONE);
+        batch.put(ATTRIBUTES_POS, (byte) Compression.NONE.ordinal());
+        assertFalse(RecordCodec.verify(batch));
+    }
+}
@@ -0,0 +1,116 @@
+package br.iff.edu.ararajuba.log;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Registros avulsos: v2, o que se grava hoje, e v0, dos segmentos antigos
+class RecordCodecTest {
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Entrada v0 como era gravada antes do magic: CRC32 de ts em diante
+    private static ByteBuffer v0(long ts, byte[] key, byte[] value) {
+        int total = RecordCodec.HEADER_SIZE + key.length + value.length;
+        ByteBuffer buf = ByteBuffer.allocate(total);
+        buf.putInt(total).putInt(0).putLong(ts).putInt(key.length).putInt(value.length).put(key).put(value);
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 8, total - 8);
+        buf.putInt(4, (int) crc.getValue());
+        return buf.flip();
+    }
+
+    @Test
+    void v2RoundTrips() {
+        ByteBuffer buf = RecordCodec.encode(7, bytes("user-1"), bytes("olá"));
+        assertEquals(RecordCodec.encodedSize(bytes("user-1"), bytes("olá")), buf.remaining());
+        assertEquals(RecordCodec.MAGIC_RECORD, buf.get(8));
+        assertTrue(RecordCodec.verify(buf));
+        assertFalse(RecordCodec.isBatch(buf, 0));
+        assertEquals(1, RecordCodec.recordCount(buf, 0));
+
+        MessageRecord r = RecordCodec.decode(7, buf);
+        assertEquals(7, r.offset());
+        assertArrayEquals(bytes("user-1"), r.key());
+        assertArrayEquals(bytes("olá"), r.value());
+        assertFalse(buf.hasRemaining());
+    }
+
+    @Test
+    void v2KeepsTimestampAndNullKey() {
+        ByteBuffer buf = ByteBuffer.allocate(64);
+        int n = RecordCodec.encode(buf, 123456789L, null, bytes("v"));
+        assertEquals(n, buf.position());
+        buf.flip();
+
+        assertTrue(RecordCodec.verify(buf));
+        assertEquals(123456789L, RecordCodec.firstTimestamp(buf, 0));
+        MessageRecord r = RecordCodec.decode(0, buf);
+        assertEquals(123456789L, r.ts());
+        assertEquals(0, r.key().length);
+        assertArrayEquals(bytes("v"), r.value());
+    }
+
+    @Test
+    void encodeRejectsBufferWithoutRoom() {
+        ByteBuffer buf = ByteBuffer.allocate(RecordCodec.encodedSize(bytes("k"), bytes("v")) - 1);
+        assertThrows(IllegalArgumentException.class, () -> RecordCodec.encode(buf, 0, bytes("k"), bytes("v")));
+    }
+
+    @Test
+    void v0StillDecodes() {
+        ByteBuffer buf = v0(1700000000000L, bytes("user-1"), bytes("mensagem teste"));
+        assertTrue(RecordCodec.verify(buf));
+        assertEquals(1700000000000L, RecordCodec.maxTimestamp(buf, 0));
+
+        MessageRecord r = RecordCodec.decode(3, buf);
+        assertEquals(3, r.offset());
+        assertEquals(1700000000000L, r.ts());
+        assertArrayEquals(bytes("user-1"), r.key());
+        assertArrayEquals(bytes("mensagem teste"), r.value());
+    }
+
+    @Test
+    void flyweightDecodeReadsInPlace() {
+        ByteBuffer buf = ByteBuffer.allocate(256);
+        RecordCodec.encode(buf, 1, bytes("a"), bytes("primeiro"));
+        int second = buf.position();
+        RecordCodec.encode(buf, 2, bytes("bb"), bytes("segundo"));
+
+        RecordView view = new RecordView();
+        assertSame(view, RecordCodec.decode(11, buf, second, view));
+        assertEquals(11, view.offset());
+        assertEquals(2, view.ts());
+        assertEquals("bb", view.keyString());
+        assertEquals("segundo", view.valueString());
+        assertEquals(RecordCodec.sizeOf(bytes("bb"), bytes("segundo")), view.size());
+        assertEquals(second + RecordCodec.encodedSize(bytes("bb"), bytes("segundo")), buf.position());
+    }
+
+    @Test
+    void crcMismatchIsRejected() {
+        ByteBuffer v2 = RecordCodec.encode(0, bytes("k"), bytes("valor"));
+        ByteBuffer v0 = v0(1, bytes("k"), bytes("valor"));
+        for (ByteBuffer buf : new ByteBuffer[]{v2, v0}) {
+            for (int i = 8; i < buf.limit(); i++) {
+                // Tamanhos trocados já barram antes do CRC; os demais bytes só o CRC pega
+                ByteBuffer copy = ByteBuffer.allocate(buf.limit()).put(buf.duplicate()).flip();
+                copy.put(i, (byte) (copy.get(i) ^ 0x10));
+                assertFalse(RecordCodec.verify(copy), "byte " + i);
+            }
+        }
+    }
+
+    @Test
+    void truncatedEntryIsRejected() {
+        ByteBuffer buf = RecordCodec.encode(0, bytes("k"), bytes("valor"));
+        buf.limit(buf.limit() - 1);
+        assertFalse(RecordCodec.verify(buf));
+    }
+}
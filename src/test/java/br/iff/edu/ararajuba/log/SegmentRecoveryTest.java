@@ -0,0 +1,129 @@
+package br.iff.edu.ararajuba.log;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+// Depois de uma queda a cauda do segmento ativo pode ter uma escrita pela metade ou bytes corrompidos:
+// recover() corta no primeiro registro inválido e o que veio antes continua legível
+class SegmentRecoveryTest {
+
+    @TempDir
+    Path dir;
+
+    private Segment segment;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (segment != null) segment.close();
+    }
+
+    private Segment open() throws Exception {
+        segment = new Segment(dir, 0, LogConfig.fromSettings(), true);
+        return segment;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Grava n registros e devolve a posição de início de cada um no arquivo
+    private long[] write(int n) throws Exception {
+        ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+        long[] positions = new long[n];
+        for (int i = 0; i < n; i++) {
+            positions[i] = buf.position();
+            RecordCodec.encode(buf, 1000 + i, bytes("k" + i), bytes("valor-" + i));
+        }
+        Segment s = open();
+        s.append(buf, 0, buf.position());
+        s.close();
+        segment = null;
+        return positions;
+    }
+
+    private Path logFile() {
+        return dir.resolve(Segment.fileName(0, Segment.LOG_SUFFIX));
+    }
+
+    private List<MessageRecord> readAll(Segment s) throws Exception {
+        List<MessageRecord> out = new ArrayList<>();
+        s.read(0, new RecordSink(Integer.MAX_VALUE, Integer.MAX_VALUE, r -> out.add(r.toRecord())));
+        return out;
+    }
+
+    @Test
+    void intactSegmentIsNotTruncated() throws Exception {
+        write(10);
+        long size = Files.size(logFile());
+
+        Segment s = open();
+        assertEquals(0, s.recover(0, 0));
+        assertEquals(10, s.nextOffset());
+        assertEquals(size, s.size());
+        assertEquals(10, readAll(s).size());
+    }
+
+    @Test
+    void tornTailIsTruncated() throws Exception {
+        write(10);
+        long size = Files.size(logFile());
+
+        // Metade de um registro v2 válido, como uma escrita interrompida
+        ByteBuffer partial = ByteBuffer.allocate(RecordCodec.encodedSize(bytes("k10"), bytes("valor-10")));
+        RecordCodec.encode(partial, 2000, bytes("k10"), bytes("valor-10"));
+        partial.flip().limit(partial.limit() / 2);
+        int torn = partial.remaining();
+        try (FileChannel ch = FileChannel.open(logFile(), WRITE, APPEND)) {
+            ch.write(partial);
+        }
+
+        Segment s = open();
+        assertEquals(torn, s.recover(0, 0));
+        assertEquals(10, s.nextOffset());
+        assertEquals(size, s.size());
+        assertEquals(size, Files.size(logFile()));
+
+        List<MessageRecord> records = readAll(s);
+        assertEquals(10, records.size());
+        assertEquals("valor-9", new String(records.get(9).value(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void corruptedRecordIsTruncatedWithEverythingAfterIt() throws Exception {
+        long[] positions = write(10);
+        long size = Files.size(logFile());
+
+        // Um byte do value do registro 7 trocado: o CRC32C não confere mais
+        long at = positions[7] + RecordCodec.RECORD_HEADER_SIZE + 2;
+        try (FileChannel ch = FileChannel.open(logFile(), READ, WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            ch.read(b, at);
+            b.put(0, (byte) (b.get(0) ^ 0x40)).rewind();
+            ch.write(b, at);
+        }
+
+        Segment s = open();
+        assertEquals(size - positions[7], s.recover(0, 0));
+        assertEquals(7, s.nextOffset());
+        assertEquals(positions[7], Files.size(logFile()));
+        assertEquals(7, readAll(s).size());
+
+        // O próximo append continua do offset 7
+        ByteBuffer next = ByteBuffer.allocate(256);
+        RecordCodec.encode(next, 3000, bytes("k7"), bytes("de novo"));
+        assertEquals(7, s.append(next, 0, next.position()));
+        assertEquals("de novo", new String(s.read(7).orElseThrow().value(), StandardCharsets.UTF_8));
+    }
+}
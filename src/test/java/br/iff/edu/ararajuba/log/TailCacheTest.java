@@ -0,0 +1,97 @@
+package br.iff.edu.ararajuba.log;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TailCacheTest {
+
+    private static ByteBuffer entries(int from, int n) {
+        ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+        for (int i = from; i < from + n; i++) {
+            RecordCodec.encode(buf, i, ("k" + i).getBytes(StandardCharsets.UTF_8), ("valor-" + i).getBytes(StandardCharsets.UTF_8));
+        }
+        return buf;
+    }
+
+    private static void append(TailCache tail, int from, int n) {
+        ByteBuffer buf = entries(from, n);
+        tail.append(from, buf, 0, buf.position());
+    }
+
+    private static List<String> read(TailCache tail, long from, int maxRecords, int maxBytes) {
+        List<String> out = new ArrayList<>();
+        assertTrue(tail.read(from, new RecordSink(maxRecords, maxBytes, r -> out.add(r.offset() + ":" + r.valueString()))));
+        return out;
+    }
+
+    @Test
+    void readsRespectSinkLimits() {
+        TailCache tail = new TailCache(1 << 20, 0);
+        append(tail, 0, 20);
+
+        assertEquals(List.of("5:valor-5", "6:valor-6"), read(tail, 5, 2, Integer.MAX_VALUE));
+        assertEquals(20, read(tail, 0, 100, Integer.MAX_VALUE).size());
+
+        // Cada registro tem 33 bytes no tamanho v0: cabem 3 em 100
+        assertEquals(3, read(tail, 0, 100, 100).size());
+        // O primeiro passa mesmo sozinho maior que maxBytes
+        assertEquals(1, read(tail, 0, 100, 1).size());
+
+        List<String> capped = new ArrayList<>();
+        tail.read(0, new RecordSink(100, Integer.MAX_VALUE, r -> capped.add(r.valueString())).until(4));
+        assertEquals(4, capped.size());
+
+        assertFalse(tail.read(20, new RecordSink(1, 1, r -> {})));
+    }
+
+    @Test
+    void readsAcrossTheEndOfTheRing() {
+        // Anel pequeno: as entradas mais antigas saem e as novas dão a volta
+        TailCache tail = new TailCache(1024, 0);
+        for (int i = 0; i < 200; i += 10) append(tail, i, 10);
+
+        List<String> out = read(tail, 199, 10, Integer.MAX_VALUE);
+        assertEquals(List.of("199:valor-199"), out);
+        assertFalse(tail.read(0, new RecordSink(1, 1, r -> {})));
+
+        List<String> last = read(tail, 190, 10, Integer.MAX_VALUE);
+        assertEquals(10, last.size());
+        for (int i = 0; i < 10; i++) assertEquals((190 + i) + ":valor-" + (190 + i), last.get(i));
+    }
+
+    // O visitor roda fora do lock de leitura: um consumidor lento não segura o append do escritor
+    @Test
+    void slowVisitorDoesNotBlockAppend() throws Exception {
+        TailCache tail = new TailCache(1 << 20, 0);
+        append(tail, 0, 10);
+
+        CountDownLatch inVisitor = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> reader = CompletableFuture.runAsync(() -> tail.read(0, new RecordSink(10, Integer.MAX_VALUE, r -> {
+            inVisitor.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        })));
+        assertTrue(inVisitor.await(5, TimeUnit.SECONDS));
+
+        try {
+            CompletableFuture.runAsync(() -> append(tail, 10, 10)).get(5, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+        }
+        reader.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("19:valor-19"), read(tail, 19, 10, Integer.MAX_VALUE));
+    }
+}
@@ -0,0 +1,107 @@
+package br.iff.edu.ararajuba.service;
+
+import br.iff.edu.ararajuba.Fixtures;
+import br.iff.edu.ararajuba.core.Dispatcher;
+import br.iff.edu.ararajuba.core.Partitioner;
+import br.iff.edu.ararajuba.dto.AckDTO;
+import br.iff.edu.ararajuba.dto.MessageDTO;
+import br.iff.edu.ararajuba.dto.MessageView;
+import br.iff.edu.ararajuba.log.CommitLog;
+import br.iff.edu.ararajuba.state.ConsumerStateStore;
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.NotFoundException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BrokerServiceTest {
+
+    private static final String[] PROPERTIES = {"ararajuba.data.dir", "ararajuba.log.flush.mode", "ararajuba.topic.partitions"};
+
+    @TempDir
+    Path dir;
+
+    private CommitLog log;
+    private ConsumerStateStore state;
+    private BrokerService broker;
+
+    @BeforeEach
+    void setUp() {
+        System.setProperty("ararajuba.data.dir", dir.toString());
+        System.setProperty("ararajuba.log.flush.mode", "none");
+        System.setProperty("ararajuba.topic.partitions", "3");
+        log = Fixtures.start(new CommitLog());
+        log.whenReady().join();
+        broker = new BrokerService();
+        state = Fixtures.start(new ConsumerStateStore());
+        broker.log = log;
+        broker.state = state;
+        broker.dispatcher = new Dispatcher();
+        broker.partitioner = Fixtures.inject(new Partitioner(), "log", log);
+    }
+
+    @AfterEach
+    void tearDown() {
+        Fixtures.stop(state);
+        Fixtures.stop(log);
+        for (String p : PROPERTIES) System.clearProperty(p);
+    }
+
+    private List<MessageView> poll(String topic) throws Exception {
+        return broker.poll(topic, null, null, 100, 0, null, null).toCompletableFuture().join();
+    }
+
+    // "orders#1" seria lido como a partição 1 de "orders" e mudaria a contagem dele
+    @Test
+    void topicNamesWithSeparatorAreRejected() throws Exception {
+        MessageDTO m = new MessageDTO(null, "v");
+        assertThrows(BadRequestException.class, () -> broker.publish("orders#1", m));
+        assertThrows(BadRequestException.class, () -> broker.publishBatch("orders#1", List.of(m)));
+        assertThrows(BadRequestException.class, () -> broker.poll("orders#1", null, null, 10, 0, null, null));
+        assertThrows(BadRequestException.class, () -> broker.ack("orders#1", "g", null, new AckDTO(List.of("0"))));
+        assertThrows(BadRequestException.class, () -> broker.topicStats("orders#1"));
+        assertTrue(log.listTopics().isEmpty());
+
+        broker.publish("orders", m);
+        assertEquals(3, log.listTopics().size());
+    }
+
+    @Test
+    void readsOfUnknownTopicCreateNothing() throws Exception {
+        assertThrows(NotFoundException.class, () -> broker.poll("typo", null, null, 10, 0, null, null));
+        assertThrows(NotFoundException.class, () -> broker.poll("typo", "g", 0, 10, 0, null, null));
+        assertThrows(NotFoundException.class, () -> broker.ack("typo", "g", null, new AckDTO(List.of("0"))));
+        assertThrows(NotFoundException.class, () -> broker.topicStats("typo"));
+        assertTrue(log.listTopics().isEmpty());
+        assertTrue(log.topicNames().isEmpty());
+    }
+
+    @Test
+    void keylessPublishesRotateAndPollReadsEveryPartition() throws Exception {
+        for (int i = 0; i < 6; i++) broker.publish("orders", new MessageDTO(null, "v" + i));
+
+        Map<Integer, Integer> perPartition = new TreeMap<>();
+        for (MessageView v : poll("orders")) perPartition.merge(v.partition(), 1, Integer::sum);
+        assertEquals(Map.of(0, 2, 1, 2, 2, 2), perPartition);
+    }
+
+    // O começo sorteado do poll não pode consumir o rodízio dos publishers
+    @Test
+    void pollDoesNotAdvanceTheRoundRobin() throws Exception {
+        int previous = broker.publish("orders", new MessageDTO(null, "a")).partition();
+        for (int i = 0; i < 10; i++) {
+            poll("orders");
+            int p = broker.publish("orders", new MessageDTO(null, "b" + i)).partition();
+            assertEquals((previous + 1) % 3, p);
+            previous = p;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package br.iff.edu.ararajuba.state;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AckTrackerTest {
+
+    @Test
+    void committedAdvancesOnlyOverContiguousAcks() {
+        AckTracker t = new AckTracker(-1);
+        assertEquals(-1, t.committed());
+        t.ack(1);
+        t.ack(2);
+        assertEquals(-1, t.committed());
+        t.ack(0);
+        assertEquals(2, t.committed());
+        t.ack(2);
+        assertEquals(2, t.committed());
+    }
+
+    @Test
+    void rangeAndCumulativeAcks() {
+        AckTracker t = new AckTracker(9);
+        t.ackRange(20, 200);
+        assertEquals(9, t.committed());
+        t.ackRange(10, 19);
+        assertEquals(200, t.committed());
+        t.ackUpTo(150);
+        assertEquals(200, t.committed());
+        t.ack(205);
+        t.ackUpTo(203);
+        assertEquals(203, t.committed());
+        t.ack(204);
+        assertEquals(205, t.committed());
+    }
+
+    @Test
+    void skipToTreatsEarlierOffsetsAsAcked() {
+        AckTracker t = new AckTracker(-1);
+        t.ack(101);
+        t.skipTo(100);
+        assertEquals(99, t.committed());
+        t.skipTo(101);
+        assertEquals(101, t.committed());
+    }
+
+    @Test
+    void acksBeyondTheWindowAreDropped() {
+        AckTracker t = new AckTracker(-1);
+        t.ack(5_000_000);
+        t.ackUpTo(4_999_999);
+        assertEquals(4_999_999, t.committed());
+    }
+
+    // Acks em ordem aleatória, inclusive repetidos e sobrepostos: committed é sempre o fim do prefixo confirmado
+    @Test
+    void matchesBitSetModel() {
+        Random rnd = new Random(7);
+        for (int round = 0; round < 20; round++) {
+            AckTracker t = new AckTracker(-1);
+            BitSet acked = new BitSet();
+            for (int i = 0; i < 5000; i++) {
+                int from = rnd.nextInt(20_000);
+                int to = from + (rnd.nextInt(4) == 0 ? rnd.nextInt(300) : 0);
+                t.ackRange(from, to);
+                acked.set(from, to + 1);
+                assertEquals(acked.nextClearBit(0) - 1, t.committed());
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package br.iff.edu.ararajuba.state;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsumerStateStoreTest {
+
+    private static final String[] PROPERTIES = {"ararajuba.data.dir", "ararajuba.offsets.flush.interval.ms"};
+
+    @TempDir
+    Path dir;
+
+    private ConsumerStateStore store;
+
+    @AfterEach
+    void tearDown() {
+        if (store != null) store.close();
+        for (String p : PROPERTIES) System.clearProperty(p);
+    }
+
+    // Flusher parado na prática: o fsync do journal só acontece no close
+    private ConsumerStateStore open() {
+        if (store != null) store.close();
+        System.setProperty("ararajuba.data.dir", dir.toString());
+        System.setProperty("ararajuba.offsets.flush.interval.ms", "600000");
+        store = new ConsumerStateStore();
+        store.init();
+        return store;
+    }
+
+    private Path stateDir() {
+        return dir.resolve("consumer-state");
+    }
+
+    private Path legacy(String topic, String group) throws Exception {
+        Files.createDirectories(stateDir());
+        Path f = stateDir().resolve(topic + "__" + group + ".json");
+        Files.writeString(f, "{\"committedOffset\":41}");
+        return f;
+    }
+
+    @Test
+    void commitsSurviveRestart() {
+        open().commit("orders", "g", 10);
+        store.commit("orders", "g", 7);
+        assertEquals(10, store.getCommitted("orders", "g"));
+        assertEquals(-1, store.getCommitted("orders", "outro"));
+
+        assertEquals(10, open().getCommitted("orders", "g"));
+    }
+
+    // O JSON antigo só sai depois que o valor migrado teve fsync no journal
+    @Test
+    void legacyOffsetMigratesAndTheJsonIsDeletedAfterFlush() throws Exception {
+        Path f = legacy("orders", "g");
+
+        assertEquals(41, open().getCommitted("orders", "g"));
+        assertTrue(Files.exists(f));
+
+        store.close();
+        store = null;
+        assertFalse(Files.exists(f));
+        assertEquals(41, open().getCommitted("orders", "g"));
+    }
+
+    @Test
+    void legacyJsonAlreadyInTheJournalIsDeletedOnStart() throws Exception {
+        open().commit("orders", "g", 50);
+        store.close();
+        store = null;
+
+        // Restos de uma migração feita antes de o JSON passar a ser apagado
+        Path f = legacy("orders", "g");
+        assertEquals(50, open().getCommitted("orders", "g"));
+        assertFalse(Files.exists(f));
+    }
+
+    @Test
+    void oversizedKeyIsRejectedBeforeEnteringTheMap() {
+        String longGroup = "g".repeat(0x10000);
+        assertThrows(IllegalArgumentException.class, () -> open().commit("orders", longGroup, 1));
+        assertTrue(store.committedByTopic().isEmpty());
+    }
+}
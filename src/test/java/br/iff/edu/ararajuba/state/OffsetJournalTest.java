@@ -0,0 +1,116 @@
+package br.iff.edu.ararajuba.state;
+
+import br.iff.edu.ararajuba.state.OffsetJournal.Key;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.file.StandardOpenOption.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffsetJournalTest {
+
+    private static final Key A = new Key("orders", "g1");
+    private static final Key B = new Key("orders#1", "g2");
+
+    @TempDir
+    Path dir;
+
+    private OffsetJournal journal;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (journal != null) journal.close();
+    }
+
+    private Map<Key, Long> reopen() throws Exception {
+        if (journal != null) journal.close();
+        journal = new OffsetJournal(dir);
+        Map<Key, Long> out = new HashMap<>();
+        journal.recover(out);
+        return out;
+    }
+
+    private Path file() {
+        return dir.resolve(OffsetJournal.FILE_NAME);
+    }
+
+    @Test
+    void replayKeepsTheLargestOffsetOfEachKey() throws Exception {
+        assertTrue(reopen().isEmpty());
+        journal.append(Map.of(A, 5L, B, 1L));
+        journal.append(Map.of(A, 9L));
+        // Não acontece pelo ConsumerStateStore (commits só avançam), mas a regra do replay é o maior
+        journal.append(Map.of(A, 7L, B, 3L));
+
+        assertEquals(Map.of(A, 9L, B, 3L), reopen());
+    }
+
+    @Test
+    void tornTailIsDiscarded() throws Exception {
+        reopen();
+        journal.append(Map.of(A, 5L));
+        journal.append(Map.of(B, 8L));
+        long valid = journal.size();
+
+        // Metade de um registro, como um append interrompido pelo crash
+        try (FileChannel ch = FileChannel.open(file(), WRITE, APPEND)) {
+            ch.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 40, 1, 2, 3, 4, 0, 0}));
+        }
+
+        assertEquals(Map.of(A, 5L, B, 8L), reopen());
+        assertEquals(valid, Files.size(file()));
+
+        journal.append(Map.of(A, 6L));
+        assertEquals(Map.of(A, 6L, B, 8L), reopen());
+    }
+
+    @Test
+    void recordWithBadCrcEndsTheReplay() throws Exception {
+        reopen();
+        journal.append(Map.of(A, 5L));
+        long first = journal.size();
+        journal.append(Map.of(B, 8L));
+        journal.append(Map.of(A, 11L));
+
+        // Byte do offset do segundo registro trocado: ele e tudo depois são descartados
+        try (FileChannel ch = FileChannel.open(file(), READ, WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            ch.read(b, first + 12);
+            b.put(0, (byte) (b.get(0) ^ 0x01)).rewind();
+            ch.write(b, first + 12);
+        }
+
+        assertEquals(Map.of(A, 5L), reopen());
+        assertEquals(first, Files.size(file()));
+    }
+
+    @Test
+    void compactionKeepsOnlyLiveStateAcrossReopen() throws Exception {
+        reopen();
+        for (long i = 0; i < 100; i++) journal.append(Map.of(A, i, B, i * 2));
+        long before = journal.size();
+
+        journal.compact(Map.of(A, 99L, B, 198L));
+        assertTrue(journal.size() < before);
+        assertFalse(Files.exists(dir.resolve(OffsetJournal.FILE_NAME + ".compact")));
+
+        journal.append(Map.of(A, 100L));
+        assertEquals(Map.of(A, 100L, B, 198L), reopen());
+    }
+
+    @Test
+    void oversizedKeysAreRejected() {
+        String longName = "x".repeat(0x10000);
+        assertThrows(IllegalArgumentException.class, () -> OffsetJournal.recordSize(new Key(longName, "g")));
+        assertThrows(IllegalArgumentException.class, () -> OffsetJournal.recordSize(new Key("t", longName)));
+        assertEquals(OffsetJournal.recordSize(new Key("t", "g")) + 2, OffsetJournal.recordSize(new Key("tt", "gg")));
+    }
+}
@@ -0,0 +1,67 @@
+package br.iff.edu.ararajuba.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongLongHashMapTest {
+
+    @Test
+    void putGetRemove() {
+        LongLongHashMap m = new LongLongHashMap(4);
+        assertEquals(LongLongHashMap.MISSING, m.get(7));
+        assertEquals(LongLongHashMap.MISSING, m.put(7, 70));
+        assertEquals(70, m.put(7, 71));
+        assertEquals(71, m.get(7));
+        assertEquals(1, m.size());
+        assertEquals(71, m.remove(7));
+        assertEquals(LongLongHashMap.MISSING, m.remove(7));
+        assertTrue(m.isEmpty());
+    }
+
+    @Test
+    void negativeKeysAreRejected() {
+        LongLongHashMap m = new LongLongHashMap(4);
+        assertThrows(IllegalArgumentException.class, () -> m.put(-1, 1));
+    }
+
+    // Mesma sequência de operações num HashMap: remoção com deslocamento não pode perder chaves das cadeias de sondagem
+    @Test
+    void matchesHashMapUnderRandomOperations() {
+        Random rnd = new Random(42);
+        LongLongHashMap m = new LongLongHashMap(16);
+        Map<Long, Long> model = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            // Chaves próximas, como offsets pendentes, e algumas espalhadas
+            long key = rnd.nextInt(4) == 0 ? rnd.nextLong(Long.MAX_VALUE) : rnd.nextInt(2048);
+            switch (rnd.nextInt(3)) {
+                case 0 -> {
+                    long v = rnd.nextLong();
+                    Long old = model.put(key, v);
+                    assertEquals(old == null ? LongLongHashMap.MISSING : old, m.put(key, v));
+                }
+                case 1 -> {
+                    Long old = model.remove(key);
+                    assertEquals(old == null ? LongLongHashMap.MISSING : old, m.remove(key));
+                }
+                default -> {
+                    Long v = model.get(key);
+                    assertEquals(v == null ? LongLongHashMap.MISSING : v, m.get(key));
+                }
+            }
+            assertEquals(model.size(), m.size());
+        }
+
+        Map<Long, Long> seen = new HashMap<>();
+        m.forEach(seen::put);
+        assertEquals(model, seen);
+
+        m.clear();
+        assertTrue(m.isEmpty());
+        for (long k : model.keySet()) assertEquals(LongLongHashMap.MISSING, m.get(k));
+    }
+}
@@ -0,0 +1,93 @@
+package br.iff.edu.ararajuba.util;
+
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.spi.ConfigProviderResolver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SettingsTest {
+
+    // Variável que já existe no ambiente do processo (PATH, HOME...): a JVM não deixa definir uma nova
+    private static final String ENV = System.getenv().keySet().stream()
+            .filter(k -> k.matches("[A-Z][A-Z0-9_]*") && !System.getenv(k).isBlank())
+            .sorted()
+            .findFirst()
+            .orElseThrow();
+    private static final String ENV_PROPERTY = ENV.toLowerCase();
+
+    // Faz o papel do application.properties: a configuração do Quarkus registrada para o class loader do teste
+    private final Map<String, String> properties = new HashMap<>();
+    private final Config config = (Config) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Config.class},
+            (p, m, args) -> switch (m.getName()) {
+                case "getOptionalValue" -> Optional.ofNullable(properties.get((String) args[0]));
+                case "hashCode" -> System.identityHashCode(p);
+                case "equals" -> p == args[0];
+                case "toString" -> "application.properties";
+                default -> throw new UnsupportedOperationException(m.getName());
+            });
+    private Config previous;
+
+    @BeforeEach
+    void setUp() {
+        ConfigProviderResolver resolver = ConfigProviderResolver.instance();
+        ClassLoader cl = Thread.currentThread().getContextClassLoader();
+        try {
+            previous = resolver.getConfig(cl);
+            resolver.releaseConfig(previous);
+        } catch (IllegalStateException e) {
+            previous = null;
+        }
+        resolver.registerConfig(config, cl);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ConfigProviderResolver resolver = ConfigProviderResolver.instance();
+        resolver.releaseConfig(config);
+        if (previous != null) resolver.registerConfig(previous, Thread.currentThread().getContextClassLoader());
+        System.clearProperty(ENV_PROPERTY);
+        System.clearProperty("ararajuba.settings-test");
+    }
+
+    @Test
+    void systemPropertyWinsOverEnvironmentAndConfig() {
+        properties.put(ENV_PROPERTY, "config");
+        System.setProperty(ENV_PROPERTY, " propriedade ");
+        assertEquals("propriedade", Settings.get(ENV_PROPERTY, "default"));
+    }
+
+    @Test
+    void environmentWinsOverConfig() {
+        assertEquals(ENV, Settings.envName(ENV_PROPERTY));
+        properties.put(ENV_PROPERTY, "config");
+        assertEquals(System.getenv(ENV).trim(), Settings.get(ENV_PROPERTY, "default"));
+    }
+
+    @Test
+    void configWinsOverDefault() {
+        assertEquals("default", Settings.get("ararajuba.settings-test", "default"));
+        assertEquals(7, Settings.getInt("ararajuba.settings-test", 7));
+
+        properties.put("ararajuba.settings-test", "42");
+        assertEquals("42", Settings.get("ararajuba.settings-test", "default"));
+        assertEquals(42, Settings.getInt("ararajuba.settings-test", 7));
+        assertEquals(42L, Settings.getLong("ararajuba.settings-test", 7L));
+
+        System.setProperty("ararajuba.settings-test", "43");
+        assertEquals(43, Settings.getInt("ararajuba.settings-test", 7));
+    }
+
+    @Test
+    void environmentNamesFollowTheProperty() {
+        assertEquals("ARARAJUBA_DELIVERY_MAX_IN_FLIGHT", Settings.envName("ararajuba.delivery.max-in-flight"));
+        assertEquals("ARARAJUBA_LOG_FLUSH_INTERVAL_MS", Settings.envName("ararajuba.log.flush.interval.ms"));
+    }
+}
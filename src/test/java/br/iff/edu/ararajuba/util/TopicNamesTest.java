@@ -0,0 +1,44 @@
+package br.iff.edu.ararajuba.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TopicNamesTest {
+
+    @Test
+    void partitionNamesRoundTrip() {
+        assertEquals("orders", TopicNames.partitionTopic("orders", 0, 1));
+        assertEquals("orders#3", TopicNames.partitionTopic("orders", 3, 4));
+
+        assertEquals(3, TopicNames.partitionOf("orders#3"));
+        assertEquals("orders", TopicNames.logicalTopic("orders#3"));
+        assertEquals(12, TopicNames.partitionOf("a#b#12"));
+        assertEquals("a#b", TopicNames.logicalTopic("a#b#12"));
+    }
+
+    @Test
+    void namesWithoutPartitionSuffix() {
+        for (String name : new String[]{"orders", "#3", "orders#", "orders#x", "orders#3a"}) {
+            assertEquals(-1, TopicNames.partitionOf(name), name);
+            assertEquals(name, TopicNames.logicalTopic(name));
+        }
+    }
+
+    @Test
+    void separatorIsReservedInClientNames() {
+        assertTrue(TopicNames.isValid("orders"));
+        assertTrue(TopicNames.isValid(TopicNames.physicalTopic("orders", "lojaA")));
+        assertFalse(TopicNames.isValid("orders#1"));
+        assertFalse(TopicNames.isValid(TopicNames.physicalTopic("orders", "g#1")));
+        assertFalse(TopicNames.isValid(" "));
+        assertFalse(TopicNames.isValid(null));
+    }
+
+    @Test
+    void routeGroupBecomesSuffix() {
+        assertEquals("orders", TopicNames.physicalTopic("orders", null));
+        assertEquals("orders", TopicNames.physicalTopic("orders", " "));
+        assertEquals("orders__lojaA", TopicNames.physicalTopic("orders", "lojaA"));
+    }
+}